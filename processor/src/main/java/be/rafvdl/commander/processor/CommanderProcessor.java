@@ -0,0 +1,660 @@
+package be.rafvdl.commander.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates a {@code CommandRegistrar} for every top level class that declares Commander commands.
+ *
+ * <p>The generated registrar describes the same command tree that {@code Commander} would find by
+ * scanning the class through reflection, and calls the command methods directly. Classes which
+ * cannot be described without reflection (private or non static command methods outside of the
+ * registered object) are skipped, and keep being registered through reflection.</p>
+ *
+ * <p>When Commander is shaded, the relocated package must be passed with the
+ * {@code -Acommander.package=...} compiler option.</p>
+ */
+@SupportedOptions(CommanderProcessor.PACKAGE_OPTION)
+public class CommanderProcessor extends AbstractProcessor {
+
+    static final String PACKAGE_OPTION = "commander.package";
+    static final String DEFAULT_PACKAGE = "be.rafvdl.commander";
+    static final String SUFFIX = "$$CommanderRegistrar";
+
+    private Elements elements;
+    private Types types;
+    private Messager messager;
+    private String pkg;
+
+    private final Set<String> generated = new HashSet<String>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.messager = processingEnv.getMessager();
+        String option = processingEnv.getOptions().get(PACKAGE_OPTION);
+        this.pkg = option != null && !option.isEmpty() ? option : DEFAULT_PACKAGE;
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(pkg + ".Command");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement command = elements.getTypeElement(pkg + ".Command");
+        if (command == null) {
+            return false;
+        }
+
+        Set<TypeElement> roots = new LinkedHashSet<TypeElement>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(command)) {
+            Element root = element;
+            while (root.getEnclosingElement() != null && root.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+                root = root.getEnclosingElement();
+            }
+            if (root instanceof TypeElement) {
+                roots.add((TypeElement) root);
+            }
+        }
+
+        for (TypeElement root : roots) {
+            if (generated.add(root.getQualifiedName().toString())) {
+                try {
+                    generate(root);
+                } catch (IOException e) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, "Could not write the command registrar: " + e.getMessage(), root);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement root) throws IOException {
+        Generator generator = new Generator(root);
+        if (!generator.writeClass(root, "root", true)) {
+            return;
+        }
+
+        PackageElement packageElement = elements.getPackageOf(root);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String simpleName = root.getSimpleName() + SUFFIX;
+        String rootType = types.erasure(root.asType()).toString();
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import ").append(pkg).append(".CommandRegistrar;\n\n");
+        source.append("/**\n * Generated by the Commander annotation processor, do not edit.\n */\n");
+        source.append("public final class ").append(simpleName).append(" implements CommandRegistrar<").append(rootType).append("> {\n\n");
+        source.append("    @Override\n");
+        source.append("    @SuppressWarnings(\"unchecked\")\n");
+        source.append("    public void register(final ").append(rootType).append(" obj, CommandRegistrar.Tree root) {\n");
+        source.append(generator.body);
+        source.append("    }\n\n");
+        source.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, root);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private class Generator {
+
+        private final TypeElement root;
+        private final StringBuilder body = new StringBuilder();
+        private int trees = 0;
+
+        Generator(TypeElement root) {
+            this.root = root;
+        }
+
+        /**
+         * Writes the commands of a class, in the same order as {@code Commander.registerClass}.
+         *
+         * @return false if the class cannot be registered without reflection
+         */
+        boolean writeClass(TypeElement clazz, String tree, boolean isRoot) {
+            String current = tree;
+            AnnotationMirror command = annotation(clazz, pkg + ".Command");
+            if (command != null) {
+                String[] aliases = strings(command, "value");
+                if (aliases.length == 0) {
+                    aliases = new String[]{clazz.getSimpleName().toString().toLowerCase()};
+                }
+
+                String invoker = "null";
+                String parameters = "";
+                AnnotationMirror commandParent = annotation(clazz, pkg + ".Command.Parent");
+                if (commandParent != null) {
+                    ExecutableElement parentMethod = findParentMethod(clazz, commandParent);
+                    if (parentMethod == null) {
+                        messager.printMessage(Diagnostic.Kind.WARNING, "Command.Parent annotation is available, but no method can be found.", clazz);
+                    } else {
+                        invoker = invoker(clazz, parentMethod, isRoot);
+                        if (invoker == null) {
+                            return false;
+                        }
+                        parameters = parameters(parentMethod);
+                    }
+                }
+
+                current = "t" + trees++;
+                body.append("        CommandRegistrar.Tree ").append(current).append(" = ").append(tree).append(".group(")
+                        .append(stringArray(aliases)).append(", ")
+                        .append(literal(string(command, "description"))).append(", ")
+                        .append(literal(permission(clazz))).append(", ")
+                        .append(invoker).append(parameters).append(");\n");
+            }
+
+            for (Element enclosed : clazz.getEnclosedElements()) {
+                if (!enclosed.getKind().isClass() && !enclosed.getKind().isInterface()) {
+                    continue;
+                }
+                if (enclosed.getKind() == ElementKind.CLASS && !enclosed.getModifiers().contains(Modifier.STATIC)) {
+                    messager.printMessage(Diagnostic.Kind.WARNING, "Nested class " + enclosed.getSimpleName() + " is not static. This is a requirement.", enclosed);
+                    continue;
+                }
+                if (!writeClass((TypeElement) enclosed, current, false)) {
+                    return false;
+                }
+            }
+
+            for (Element enclosed : clazz.getEnclosedElements()) {
+                if (enclosed.getKind() != ElementKind.METHOD) {
+                    continue;
+                }
+                ExecutableElement method = (ExecutableElement) enclosed;
+                if (annotation(method, pkg + ".Ignore") != null) {
+                    continue;
+                }
+                AnnotationMirror methodCommand = annotation(method, pkg + ".Command");
+                if (methodCommand == null) {
+                    continue;
+                }
+                if (!checkMethod(method)) {
+                    return false;
+                }
+
+                String invoker = invoker(clazz, method, isRoot);
+                if (invoker == null) {
+                    return false;
+                }
+
+                String[] aliases = strings(methodCommand, "value");
+                if (aliases.length == 0) {
+                    aliases = new String[]{method.getSimpleName().toString()};
+                }
+                body.append("        ").append(current).append(".command(")
+                        .append(stringArray(aliases)).append(", ")
+                        .append(literal(string(methodCommand, "description"))).append(", ")
+                        .append(literal(permission(method))).append(", ")
+                        .append(invoker).append(parameters(method)).append(")");
+                AnnotationMirror cooldown = annotation(method, pkg + ".Cooldown");
+                if (cooldown != null) {
+                    body.append(".cooldown(").append(value(cooldown, "value")).append("L, java.util.concurrent.TimeUnit.")
+                            .append(value(cooldown, "unit")).append(")");
+                }
+                AnnotationMirror rateLimit = annotation(method, pkg + ".RateLimit");
+                if (rateLimit != null) {
+                    body.append(".rateLimit(").append(value(rateLimit, "value")).append(", ").append(value(rateLimit, "per"))
+                            .append("L, java.util.concurrent.TimeUnit.").append(value(rateLimit, "unit")).append(")");
+                }
+                AnnotationMirror async = annotation(method, pkg + ".Async");
+                if (async != null) {
+                    body.append(".async(").append(value(async, "concurrency")).append(", ").append(value(async, "timeout")).append("L)");
+                }
+                AnnotationMirror queued = annotation(method, pkg + ".Queued");
+                if (queued != null) {
+                    body.append(".queued(").append(pkg).append(".Queued.Priority.").append(value(queued, "value")).append(")");
+                }
+                body.append(";\n");
+            }
+
+            for (Element enclosed : clazz.getEnclosedElements()) {
+                if (enclosed.getKind() != ElementKind.FIELD) {
+                    continue;
+                }
+                VariableElement field = (VariableElement) enclosed;
+                AnnotationMirror fieldCommand = annotation(field, pkg + ".Command");
+                AnnotationMirror constructorCommand = annotation(field, pkg + ".ConstructorCommand");
+                if (fieldCommand == null || constructorCommand == null) {
+                    continue;
+                }
+                if (!writeConstructorCommand(clazz, field, fieldCommand, constructorCommand, current, isRoot)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Writes a {@code ConstructorCommand} field, constructing and resetting its instances directly.
+         *
+         * @return false if the field cannot be registered without reflection
+         */
+        private boolean writeConstructorCommand(TypeElement clazz, VariableElement field, AnnotationMirror command,
+                AnnotationMirror constructorCommand, String tree, boolean isRoot) {
+            TypeElement type = (TypeElement) types.asElement((TypeMirror) value(constructorCommand, "value"));
+            ExecutableElement constructor = null;
+            for (Element enclosed : type.getEnclosedElements()) {
+                if (enclosed.getKind() != ElementKind.CONSTRUCTOR) {
+                    continue;
+                }
+                List<? extends VariableElement> parameters = ((ExecutableElement) enclosed).getParameters();
+                if (!parameters.isEmpty() && isType(parameters.get(0).asType(), "org.spongepowered.api.command.CommandSource")) {
+                    if (constructor != null) {
+                        messager.printMessage(Diagnostic.Kind.ERROR, "Class " + type.getSimpleName() + " must have a single constructor taking a CommandSource!", field);
+                        return false;
+                    }
+                    constructor = (ExecutableElement) enclosed;
+                }
+            }
+            if (constructor == null) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Class " + type.getSimpleName() + " must have a constructor taking a CommandSource!", field);
+                return false;
+            }
+
+            String resetName = string(constructorCommand, "reset");
+            ExecutableElement reset = null;
+            if (!resetName.isEmpty()) {
+                for (Element enclosed : type.getEnclosedElements()) {
+                    if (enclosed.getKind() == ElementKind.METHOD && enclosed.getSimpleName().contentEquals(resetName)
+                            && sameParameters((ExecutableElement) enclosed, constructor)) {
+                        reset = (ExecutableElement) enclosed;
+                    }
+                }
+                if (reset == null) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, "Method " + resetName + " must take the parameters of the constructor!", field);
+                    return false;
+                }
+            }
+
+            String receiver;
+            if (field.getModifiers().contains(Modifier.STATIC)) {
+                receiver = types.erasure(clazz.asType()).toString();
+            } else if (isRoot) {
+                receiver = "obj";
+            } else {
+                messager.printMessage(Diagnostic.Kind.WARNING, "Field " + field.getSimpleName() + " of a nested class must be static, "
+                        + root.getSimpleName() + " will be registered through reflection.", field);
+                return false;
+            }
+            if (field.getModifiers().contains(Modifier.PRIVATE) || !isAccessible(clazz) || constructor.getModifiers().contains(Modifier.PRIVATE)
+                    || !isAccessible(type) || (reset != null && reset.getModifiers().contains(Modifier.PRIVATE))) {
+                messager.printMessage(Diagnostic.Kind.NOTE, "Field " + field.getSimpleName() + " is not accessible, "
+                        + root.getSimpleName() + " will be registered through reflection.", field);
+                return false;
+            }
+
+            String typeName = types.erasure(type.asType()).toString();
+            StringBuilder invoker = new StringBuilder();
+            invoker.append("new CommandRegistrar.Invoker() {\n");
+            invoker.append("            @Override\n");
+            invoker.append("            public Object invoke(Object[] a, long[] p) throws Throwable {\n");
+            invoker.append("                return new ").append(typeName).append("(").append(arguments(constructor)).append(");\n");
+            invoker.append("            }\n");
+            invoker.append("        }");
+
+            String resetter = "null";
+            if (reset != null) {
+                resetter = "new CommandRegistrar.Resetter() {\n"
+                        + "            @Override\n"
+                        + "            public void reset(Object i, Object[] a, long[] p) throws Throwable {\n"
+                        + "                ((" + typeName + ") i)." + reset.getSimpleName() + "(" + arguments(reset) + ");\n"
+                        + "            }\n"
+                        + "        }";
+            }
+
+            String[] aliases = strings(command, "value");
+            if (aliases.length == 0) {
+                aliases = new String[]{field.getSimpleName().toString()};
+            }
+            body.append("        ").append(tree).append(".constructor(")
+                    .append(stringArray(aliases)).append(", ")
+                    .append(literal(string(command, "description"))).append(", ")
+                    .append(literal(permission(field))).append(", ")
+                    .append(receiver).append(".").append(field.getSimpleName()).append(", ")
+                    .append(invoker).append(", ")
+                    .append(resetter).append(", ")
+                    .append(value(constructorCommand, "poolSize"))
+                    .append(parameters(constructor)).append(");\n");
+            return true;
+        }
+
+        private boolean sameParameters(ExecutableElement method, ExecutableElement constructor) {
+            List<? extends VariableElement> parameters = method.getParameters();
+            List<? extends VariableElement> expected = constructor.getParameters();
+            if (parameters.size() != expected.size()) {
+                return false;
+            }
+            for (int i = 0; i < parameters.size(); i++) {
+                if (!types.isSameType(types.erasure(parameters.get(i).asType()), types.erasure(expected.get(i).asType()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String arguments(ExecutableElement method) {
+            StringBuilder builder = new StringBuilder();
+            List<? extends VariableElement> parameters = method.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(argument(parameters.get(i).asType(), i));
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Reads an argument from its lane, numeric primitives from the raw bits in {@code p}.
+         */
+        private String argument(TypeMirror type, int index) {
+            switch (type.getKind()) {
+                case INT:
+                case SHORT:
+                case BYTE:
+                    return "(" + type + ") p[" + index + "]";
+                case LONG:
+                    return "p[" + index + "]";
+                case DOUBLE:
+                    return "Double.longBitsToDouble(p[" + index + "])";
+                case FLOAT:
+                    return "Float.intBitsToFloat((int) p[" + index + "])";
+                default:
+                    return "(" + boxedName(type) + ") a[" + index + "]";
+            }
+        }
+
+        private boolean checkMethod(ExecutableElement method) {
+            List<? extends VariableElement> parameters = method.getParameters();
+            if (!isType(method.getReturnType(), "org.spongepowered.api.command.CommandResult")
+                    && !isType(method.getReturnType(), "java.util.concurrent.CompletableFuture")) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Method " + method.getSimpleName() + " must return CommandResult!", method);
+                return false;
+            }
+            if (!parameters.isEmpty() && !isType(parameters.get(0).asType(), "org.spongepowered.api.command.CommandSource")) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "First argument of method " + method.getSimpleName() + " must be CommandSource!", method);
+                return false;
+            }
+            return true;
+        }
+
+        private ExecutableElement findParentMethod(TypeElement clazz, AnnotationMirror commandParent) {
+            List<TypeMirror> expected = new ArrayList<TypeMirror>();
+            expected.add(elements.getTypeElement("org.spongepowered.api.command.CommandSource").asType());
+            expected.addAll(classes(commandParent, "value"));
+            for (Element enclosed : clazz.getEnclosedElements()) {
+                if (enclosed.getKind() != ElementKind.METHOD || !enclosed.getSimpleName().contentEquals("parent")) {
+                    continue;
+                }
+                ExecutableElement method = (ExecutableElement) enclosed;
+                List<? extends VariableElement> parameters = method.getParameters();
+                if (parameters.size() != expected.size()) {
+                    continue;
+                }
+                boolean matches = true;
+                for (int i = 0; i < parameters.size() && matches; i++) {
+                    matches = types.isSameType(types.erasure(parameters.get(i).asType()), types.erasure(expected.get(i)));
+                }
+                if (matches) {
+                    return method;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Writes an invoker calling the method directly, or returns null when that is not possible.
+         */
+        private String invoker(TypeElement clazz, ExecutableElement method, boolean isRoot) {
+            if (method.getModifiers().contains(Modifier.PRIVATE) || !isAccessible(clazz)) {
+                messager.printMessage(Diagnostic.Kind.NOTE, "Method " + method.getSimpleName() + " is not accessible, "
+                        + root.getSimpleName() + " will be registered through reflection.", method);
+                return null;
+            }
+            String receiver;
+            if (method.getModifiers().contains(Modifier.STATIC)) {
+                receiver = types.erasure(clazz.asType()).toString();
+            } else if (isRoot) {
+                receiver = "obj";
+            } else {
+                messager.printMessage(Diagnostic.Kind.WARNING, "Method " + method.getSimpleName() + " of a nested class must be static, "
+                        + root.getSimpleName() + " will be registered through reflection.", method);
+                return null;
+            }
+
+            StringBuilder invoker = new StringBuilder();
+            invoker.append("new CommandRegistrar.Invoker() {\n");
+            invoker.append("            @Override\n");
+            invoker.append("            public Object invoke(Object[] a, long[] p) throws Throwable {\n");
+            invoker.append("                return ").append(receiver).append(".").append(method.getSimpleName()).append("(")
+                    .append(arguments(method)).append(");\n");
+            invoker.append("            }\n");
+            invoker.append("        }");
+            return invoker.toString();
+        }
+
+        private boolean isAccessible(TypeElement clazz) {
+            for (Element element = clazz; element instanceof TypeElement; element = element.getEnclosingElement()) {
+                if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String parameters(ExecutableElement method) {
+            StringBuilder builder = new StringBuilder();
+            List<? extends VariableElement> parameters = method.getParameters();
+            for (int i = 1; i < parameters.size(); i++) {
+                builder.append(",\n                ").append(parameter(parameters.get(i)));
+            }
+            return builder.toString();
+        }
+
+        private String parameter(VariableElement parameter) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("CommandRegistrar.Parameter.of(").append(types.erasure(parameter.asType())).append(".class)");
+
+            AnnotationMirror key = annotation(parameter, pkg + ".argument.Key");
+            if (key != null) {
+                builder.append(".key(").append(literal(string(key, "value"))).append(")");
+            }
+            AnnotationMirror optional = annotation(parameter, pkg + ".argument.Optional");
+            if (optional != null) {
+                builder.append(".optional(").append(value(optional, "weak")).append(")");
+            }
+            AnnotationMirror choices = annotation(parameter, pkg + ".argument.Choices");
+            if (choices != null) {
+                builder.append(".choices(").append(literal(string(choices, "value"))).append(", ").append(value(choices, "current"))
+                        .append(", ").append(value(choices, "ignoreCase")).append(", ").append(value(choices, "limit")).append(")");
+            }
+            AnnotationMirror literal = annotation(parameter, pkg + ".argument.Literal");
+            if (literal != null) {
+                builder.append(".literal(").append(stringArray(strings(literal, "value"))).append(")");
+            }
+            if (annotation(parameter, pkg + ".argument.Conjoin") != null) {
+                builder.append(".conjoin()");
+            }
+            if (annotation(parameter, pkg + ".argument.Flag") != null) {
+                builder.append(".flag()");
+            }
+            AnnotationMirror permission = annotation(parameter, pkg + ".Permission");
+            if (permission != null) {
+                builder.append(".permission(").append(literal(string(permission, "value"))).append(")");
+            }
+            AnnotationMirror range = annotation(parameter, pkg + ".argument.Range");
+            if (range != null) {
+                builder.append(".range(").append(doubleLiteral((Double) value(range, "min"))).append(", ")
+                        .append(doubleLiteral((Double) value(range, "max"))).append(")");
+            }
+            AnnotationMirror all = annotation(parameter, pkg + ".argument.All");
+            if (all != null) {
+                builder.append(".all(").append(types.erasure((TypeMirror) value(all, "value"))).append(".class, ")
+                        .append(value(all, "limit")).append(")");
+            }
+            return builder.toString();
+        }
+
+        private String permission(Element element) {
+            AnnotationMirror permission = annotation(element, pkg + ".Permission");
+            return permission != null ? string(permission, "value") : "";
+        }
+
+    }
+
+    private boolean isType(TypeMirror type, String name) {
+        TypeElement element = elements.getTypeElement(name);
+        return element != null && types.isSameType(types.erasure(type), types.erasure(element.asType()));
+    }
+
+    private String boxedName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return types.boxedClass(types.getPrimitiveType(type.getKind())).getQualifiedName().toString();
+        }
+        if (type.getKind() == TypeKind.TYPEVAR) {
+            return "Object";
+        }
+        return types.erasure(type).toString();
+    }
+
+    private AnnotationMirror annotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (type.getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private Object value(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private String string(AnnotationMirror mirror, String name) {
+        Object value = value(mirror, name);
+        return value != null ? value.toString() : "";
+    }
+
+    private String[] strings(AnnotationMirror mirror, String name) {
+        Object value = value(mirror, name);
+        if (!(value instanceof List)) {
+            return value != null ? new String[]{value.toString()} : new String[0];
+        }
+        List<?> values = (List<?>) value;
+        String[] strings = new String[values.size()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = ((AnnotationValue) values.get(i)).getValue().toString();
+        }
+        return strings;
+    }
+
+    private List<TypeMirror> classes(AnnotationMirror mirror, String name) {
+        List<TypeMirror> classes = new ArrayList<TypeMirror>();
+        Object value = value(mirror, name);
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                classes.add((TypeMirror) ((AnnotationValue) element).getValue());
+            }
+        }
+        return classes;
+    }
+
+    private static String stringArray(String[] strings) {
+        StringBuilder builder = new StringBuilder("new String[]{");
+        for (int i = 0; i < strings.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(literal(strings[i]));
+        }
+        return builder.append("}").toString();
+    }
+
+    private static String doubleLiteral(double value) {
+        if (Double.isNaN(value)) {
+            return "Double.NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+        }
+        return Double.toString(value);
+    }
+
+    private static String literal(String string) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append("\"").toString();
+    }
+
+}
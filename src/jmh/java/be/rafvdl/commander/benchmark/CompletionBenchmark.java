@@ -0,0 +1,65 @@
+package be.rafvdl.commander.benchmark;
+
+import be.rafvdl.commander.Command;
+import be.rafvdl.commander.Commander;
+import be.rafvdl.commander.argument.Choices;
+import org.openjdk.jmh.annotations.*;
+import org.spongepowered.api.command.CommandCallable;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures tab completion of a current {@code @Choices} parameter for growing choice maps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompletionBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    @Param({"", "warp1", "warp12345"})
+    public String prefix;
+
+    private CommandCallable callable;
+    private CommandSource source;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> warps = new HashMap<String, Object>();
+        for (int i = 0; i < size; i++) {
+            warps.put("warp" + i, i);
+        }
+        StandIn standIn = new StandIn();
+        Commander commander = new Commander(new Object(), standIn.game());
+        commander.addDependency("warps", warps);
+        commander.register(new CompletionCommands());
+        callable = standIn.command("warp");
+        source = StandIn.source();
+    }
+
+    @Benchmark
+    public List<String> complete() throws CommandException {
+        return callable.getSuggestions(source, prefix);
+    }
+
+    public static class CompletionCommands {
+
+        @Command("warp")
+        public CommandResult warp(CommandSource src, @Choices(value = "warps", current = true) Object warp) {
+            return CommandResult.success();
+        }
+
+    }
+
+}
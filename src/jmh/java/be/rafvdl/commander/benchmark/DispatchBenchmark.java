@@ -0,0 +1,121 @@
+package be.rafvdl.commander.benchmark;
+
+import be.rafvdl.commander.Command;
+import be.rafvdl.commander.Commander;
+import be.rafvdl.commander.argument.Choices;
+import be.rafvdl.commander.argument.Conjoin;
+import be.rafvdl.commander.argument.Literal;
+import be.rafvdl.commander.argument.Range;
+import com.flowpowered.math.vector.Vector3d;
+import org.openjdk.jmh.annotations.*;
+import org.spongepowered.api.command.CommandCallable;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the full execution of a command, from the raw input to the command method, for each
+ * parameter type that can be parsed without a running server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DispatchBenchmark {
+
+    @Param({"none", "string hello", "conjoin some joined words", "bool true", "literal on", "integer 42", "amount 1500000",
+            "price 12.75", "enumeration SECONDS", "vector 1 2 3", "choices spawn"})
+    public String input;
+
+    @Param({"false", "true"})
+    public boolean stats;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private CommandCallable callable;
+    private CommandSource source;
+
+    @Setup
+    public void setUp() {
+        StandIn standIn = new StandIn();
+        Commander commander = new Commander(new Object(), standIn.game());
+        commander.setStatsEnabled(stats);
+        commander.setCompiledParsing(compiled);
+        commander.addDependency("warps", Collections.singletonMap("spawn", new Object()));
+        commander.register(new DispatchCommands());
+        callable = standIn.command("bench");
+        source = StandIn.source();
+    }
+
+    @Benchmark
+    public CommandResult dispatch() throws CommandException {
+        return callable.process(source, input);
+    }
+
+    @Command("bench")
+    public static class DispatchCommands {
+
+        @Command
+        public CommandResult none(CommandSource src) {
+            return CommandResult.success();
+        }
+
+        @Command
+        public CommandResult string(CommandSource src, String value) {
+            return CommandResult.success();
+        }
+
+        @Command
+        public CommandResult conjoin(CommandSource src, @Conjoin String value) {
+            return CommandResult.success();
+        }
+
+        @Command
+        public CommandResult bool(CommandSource src, boolean value) {
+            return CommandResult.success();
+        }
+
+        @Command
+        public CommandResult literal(CommandSource src, @Literal("on") boolean value) {
+            return CommandResult.success();
+        }
+
+        @Command
+        public CommandResult integer(CommandSource src, int value) {
+            return CommandResult.success();
+        }
+
+        @Command
+        public CommandResult amount(CommandSource src, long value) {
+            return CommandResult.success();
+        }
+
+        @Command
+        public CommandResult price(CommandSource src, @Range(min = 0) double value) {
+            return CommandResult.success();
+        }
+
+        @Command
+        public CommandResult enumeration(CommandSource src, TimeUnit value) {
+            return CommandResult.success();
+        }
+
+        @Command
+        public CommandResult vector(CommandSource src, Vector3d value) {
+            return CommandResult.success();
+        }
+
+        @Command
+        public CommandResult choices(CommandSource src, @Choices(value = "warps", current = true) Object value) {
+            return CommandResult.success();
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package be.rafvdl.commander.benchmark;
+
+import be.rafvdl.commander.Commander;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Commander#register(Object)}, which scans the class and builds every
+ * {@code CommandSpec} of the tree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RegistrationBenchmark {
+
+    private StandIn standIn;
+    private Object plugin;
+
+    @Setup
+    public void setUp() {
+        standIn = new StandIn();
+        plugin = new Object();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        standIn.clear();
+    }
+
+    @Benchmark
+    public Commander registerLarge() {
+        Commander commander = new Commander(plugin, standIn.game());
+        commander.register(new LargeCommands());
+        return commander;
+    }
+
+    @Benchmark
+    public Commander registerDeep() {
+        Commander commander = new Commander(plugin, standIn.game());
+        commander.register(new DeepCommands());
+        return commander;
+    }
+
+}
@@ -0,0 +1,129 @@
+package be.rafvdl.commander.benchmark;
+
+import com.google.common.base.Defaults;
+import org.spongepowered.api.Game;
+import org.spongepowered.api.command.CommandCallable;
+import org.spongepowered.api.command.CommandManager;
+import org.spongepowered.api.command.CommandMapping;
+import org.spongepowered.api.command.CommandSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Local stand-ins for the parts of the game that Commander talks to.
+ *
+ * <p>The command manager only remembers the registered callables by alias, so that benchmarks can
+ * call them directly, and returns a mapping for each, so Commander tracks its roots as it does on
+ * a server. Every other method of the game is unsupported.</p>
+ */
+public final class StandIn {
+
+    private final Map<String, CommandCallable> commands = new HashMap<String, CommandCallable>();
+    private final CommandManager commandManager = proxy(CommandManager.class, new InvocationHandler() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("register")) {
+                CommandCallable callable = (CommandCallable) args[1];
+                List<String> aliases = args[2] instanceof List ? (List<String>) args[2] : Arrays.asList((String[]) args[2]);
+                for (String alias : aliases) {
+                    commands.put(alias, callable);
+                }
+                return Optional.of(mapping(callable, aliases));
+            }
+            if (method.getName().equals("removeMapping")) {
+                CommandMapping mapping = (CommandMapping) args[0];
+                for (String alias : mapping.getAllAliases()) {
+                    commands.remove(alias, mapping.getCallable());
+                }
+                return Optional.of(mapping);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+    });
+    private final Game game = proxy(Game.class, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("getCommandManager")) {
+                return commandManager;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+    });
+
+    public Game game() {
+        return game;
+    }
+
+    public CommandCallable command(String alias) {
+        CommandCallable callable = commands.get(alias);
+        if (callable == null) {
+            throw new IllegalStateException("No command registered as " + alias);
+        }
+        return callable;
+    }
+
+    public void clear() {
+        commands.clear();
+    }
+
+    /**
+     * Creates a source which has every permission and ignores messages.
+     *
+     * @return The source
+     */
+    public static CommandSource source() {
+        return proxy(CommandSource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("hasPermission")) {
+                    return true;
+                }
+                if (method.getName().equals("getName") || method.getName().equals("getIdentifier")) {
+                    return "benchmark";
+                }
+                return Defaults.defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static CommandMapping mapping(final CommandCallable callable, List<String> aliases) {
+        final Set<String> allAliases = Collections.unmodifiableSet(new LinkedHashSet<String>(aliases));
+        return proxy(CommandMapping.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getPrimaryAlias":
+                        return allAliases.iterator().next();
+                    case "getAllAliases":
+                        return allAliases;
+                    case "getCallable":
+                        return callable;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "CommandMapping" + allAliases;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(StandIn.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+}
@@ -0,0 +1,124 @@
+package be.rafvdl.commander.benchmark;
+
+import be.rafvdl.commander.Commander;
+import be.rafvdl.commander.TrafficLog;
+import org.spongepowered.api.command.CommandCallable;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.ArgumentParseException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a {@link TrafficLog} recorded on a server against the {@link StandIn} game, and reports
+ * the throughput and latencies of the replay next to the recorded ones.
+ *
+ * <p>Usage: {@code TrafficReplay <log> <speed> <class>...}. The classes are instantiated with their
+ * no-argument constructor and registered, and must declare the commands of the log. A speed of 1
+ * keeps the recorded gaps between commands, 2 halves them, and 0 runs the commands back to back.
+ * Every command runs as a source with every permission, whatever its recorded source was.</p>
+ */
+public final class TrafficReplay {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private TrafficReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: TrafficReplay <log> <speed> <class>...");
+            System.exit(1);
+        }
+        StandIn standIn = new StandIn();
+        Commander commander = new Commander(new Object(), standIn.game());
+        for (int i = 2; i < args.length; i++) {
+            commander.register(Class.forName(args[i]).newInstance());
+        }
+        replay(standIn, Paths.get(args[0]), Double.parseDouble(args[1]));
+    }
+
+    private static void replay(StandIn standIn, Path file, double speed) throws IOException {
+        CommandSource source = StandIn.source();
+        long[] latencies = new long[1024];
+        long[] recordedLatencies = new long[1024];
+        Map<TrafficLog.Outcome, Integer> outcomes = new EnumMap<TrafficLog.Outcome, Integer>(TrafficLog.Outcome.class);
+        int count = 0;
+        int changed = 0;
+        long firstTimestamp = 0;
+        long start = System.nanoTime();
+        try (TrafficLog log = TrafficLog.open(file)) {
+            TrafficLog.Entry entry;
+            while ((entry = log.next()) != null) {
+                if (count == 0) {
+                    firstTimestamp = entry.getTimestamp();
+                }
+                if (speed > 0) {
+                    long due = start + (long) ((entry.getTimestamp() - firstTimestamp) / speed);
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                CommandCallable callable = standIn.command(entry.getPath().get(0));
+                String arguments = entry.getRootArguments();
+                TrafficLog.Outcome outcome = TrafficLog.Outcome.ERROR;
+                long begin = System.nanoTime();
+                try {
+                    callable.process(source, arguments);
+                    outcome = TrafficLog.Outcome.SUCCESS;
+                } catch (ArgumentParseException e) {
+                    outcome = TrafficLog.Outcome.INVALID_ARGUMENTS;
+                } catch (CommandException e) {
+                    outcome = TrafficLog.Outcome.FAILURE;
+                } catch (RuntimeException e) {
+                    // Counted as an error.
+                }
+                long latency = System.nanoTime() - begin;
+
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                    recordedLatencies = Arrays.copyOf(recordedLatencies, count * 2);
+                }
+                latencies[count] = latency;
+                recordedLatencies[count] = entry.getLatency();
+                count++;
+                Integer previous = outcomes.get(outcome);
+                outcomes.put(outcome, previous != null ? previous + 1 : 1);
+                if (outcome != entry.getOutcome()) {
+                    changed++;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("Replayed " + count + " commands in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms, "
+                + String.format("%.1f", count * 1e9 / Math.max(1, elapsed)) + " commands/s");
+        System.out.println("Outcomes: " + outcomes + ", " + changed + " differ from the recording");
+        if (count == 0) {
+            return;
+        }
+        long[] replayed = Arrays.copyOf(latencies, count);
+        long[] recorded = Arrays.copyOf(recordedLatencies, count);
+        Arrays.sort(replayed);
+        Arrays.sort(recorded);
+        System.out.println(String.format("%-10s %12s %12s", "latency", "replay (us)", "recorded (us)"));
+        for (double percentile : PERCENTILES) {
+            System.out.println(String.format("%-10s %12.2f %12.2f", "p" + percentile, percentile(replayed, percentile) / 1e3,
+                    percentile(recorded, percentile) / 1e3));
+        }
+        System.out.println(String.format("%-10s %12.2f %12.2f", "max", replayed[count - 1] / 1e3, recorded[count - 1] / 1e3));
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+}
@@ -0,0 +1,322 @@
+package be.rafvdl.commander;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * The aliases of the children of a command, indexed for dispatching and for suggesting an alias
+ * when the input does not match any.
+ *
+ * <p>The aliases are placed in a trie, lower cased, so finding the child of a token walks its
+ * characters once regardless of the number of children, and completing a prefix only visits the
+ * aliases starting with it. For suggestions they are also placed in a BK-tree, in which every
+ * alias is a child of another at their edit distance; a search only descends into the subtrees
+ * that can hold an alias within the maximum distance of the input, instead of comparing it with
+ * every alias. The index is built once and never changes.</p>
+ *
+ * @param <T> The type of the values
+ */
+final class AliasIndex<T> {
+
+    private static final AliasIndex<Object> EMPTY = new AliasIndex<Object>(Collections.<String, Object>emptyMap());
+
+    private final TrieNode<T> trie;
+    @Nullable
+    private final BkNode bkTree;
+    private final int maxLength;
+
+    /**
+     * Creates an index.
+     *
+     * @param aliases The values by alias, an alias that only differs in case from another replaces it
+     */
+    AliasIndex(Map<String, T> aliases) {
+        SortedMap<String, T> sorted = new TreeMap<String, T>();
+        for (Map.Entry<String, T> entry : aliases.entrySet()) {
+            sorted.put(lowerCase(entry.getKey()), entry.getValue());
+        }
+        this.trie = TrieNode.build(new ArrayList<Map.Entry<String, T>>(sorted.entrySet()), 0);
+        BkNode bkTree = null;
+        int maxLength = 0;
+        for (String alias : sorted.keySet()) {
+            maxLength = Math.max(maxLength, alias.length());
+            if (bkTree == null) {
+                bkTree = new BkNode(alias);
+            } else {
+                bkTree.add(alias);
+            }
+        }
+        this.bkTree = bkTree;
+        this.maxLength = maxLength;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> AliasIndex<T> empty() {
+        return (AliasIndex<T>) EMPTY;
+    }
+
+    /**
+     * Gets the value of an alias, ignoring case.
+     *
+     * @param alias The alias
+     * @return The value, or null if there is no such alias
+     */
+    @Nullable
+    T get(String alias) {
+        return get(alias, 0, alias.length());
+    }
+
+    /**
+     * Gets the value of an alias in a part of a string, ignoring case.
+     *
+     * @param input The string
+     * @param start The index of the first character of the alias
+     * @param end   The index after the last character of the alias
+     * @return The value, or null if there is no such alias
+     */
+    @Nullable
+    T get(String input, int start, int end) {
+        TrieNode<T> node = trie;
+        for (int i = start; i < end && node != null; i++) {
+            node = node.next(Character.toLowerCase(input.charAt(i)));
+        }
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * Gets the aliases starting with a prefix, ignoring case.
+     *
+     * @param prefix The prefix
+     * @return The aliases in alphabetical order, lower cased
+     */
+    List<String> complete(String prefix) {
+        TrieNode<T> node = trie;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.next(Character.toLowerCase(prefix.charAt(i)));
+        }
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<String> aliases = new ArrayList<String>();
+        node.collect(aliases);
+        return aliases;
+    }
+
+    /**
+     * Gets the aliases close to an input, which does not have to be an alias itself.
+     *
+     * <p>The maximum edit distance grows with the length of the input, so a short input does not
+     * match every short alias.</p>
+     *
+     * @param input The input
+     * @param limit The maximum number of aliases
+     * @return The aliases, closest first and then in alphabetical order, lower cased
+     */
+    List<String> suggest(String input, int limit) {
+        if (bkTree == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String query = lowerCase(input);
+        int maxDistance = Math.max(1, Math.min(3, query.length() / 3));
+        List<Match> matches = new ArrayList<Match>();
+        int[][] rows = new int[2][maxLength + 1];
+        Deque<BkNode> pending = new ArrayDeque<BkNode>();
+        pending.push(bkTree);
+        while (!pending.isEmpty()) {
+            BkNode node = pending.pop();
+            // By the triangle inequality, only children at a distance within the maximum of the
+            // distance to this node can hold a match, so past the farthest child plus the maximum
+            // the exact distance does not matter. Most nodes are leaves, which stop at the maximum.
+            int distance = distance(query, node.alias, node.reach + maxDistance, rows);
+            if (distance <= maxDistance) {
+                matches.add(new Match(node.alias, distance));
+            }
+            for (int i = 0; i < node.size; i++) {
+                if (Math.abs(node.distances[i] - distance) <= maxDistance) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+        Collections.sort(matches);
+        List<String> aliases = new ArrayList<String>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            aliases.add(matches.get(i).alias);
+        }
+        return aliases;
+    }
+
+    private static String lowerCase(String alias) {
+        char[] chars = new char[alias.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(alias.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    static int distance(String a, String b) {
+        return distance(a, b, Integer.MAX_VALUE, new int[2][b.length() + 1]);
+    }
+
+    /**
+     * Computes the Levenshtein distance between two strings, giving up once it exceeds a bound.
+     *
+     * @param rows Two rows of at least the length of b plus one
+     * @return The distance, or a value above the bound if the distance exceeds it
+     */
+    private static int distance(String a, String b, int bound, int[][] rows) {
+        if (Math.abs(a.length() - b.length()) > bound) {
+            return bound + 1;
+        }
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int min = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                min = Math.min(min, current[j]);
+            }
+            if (min > bound) {
+                return bound + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static final class TrieNode<T> {
+
+        private final char[] keys;
+        private final TrieNode<T>[] next;
+        @Nullable
+        private final String alias;
+        @Nullable
+        private final T value;
+
+        private TrieNode(char[] keys, TrieNode<T>[] next, @Nullable String alias, @Nullable T value) {
+            this.keys = keys;
+            this.next = next;
+            this.alias = alias;
+            this.value = value;
+        }
+
+        /**
+         * Builds the node of the aliases sharing their first characters.
+         *
+         * @param aliases The aliases in alphabetical order
+         * @param depth   The number of characters they share
+         */
+        static <T> TrieNode<T> build(List<Map.Entry<String, T>> aliases, int depth) {
+            String alias = null;
+            T value = null;
+            int start = 0;
+            if (!aliases.isEmpty() && aliases.get(0).getKey().length() == depth) {
+                // The shortest alias sorts first and ends at this node.
+                alias = aliases.get(0).getKey();
+                value = aliases.get(0).getValue();
+                start = 1;
+            }
+            List<Character> keys = new ArrayList<Character>();
+            List<TrieNode<T>> next = new ArrayList<TrieNode<T>>();
+            while (start < aliases.size()) {
+                char key = aliases.get(start).getKey().charAt(depth);
+                int end = start + 1;
+                while (end < aliases.size() && aliases.get(end).getKey().charAt(depth) == key) {
+                    end++;
+                }
+                keys.add(key);
+                next.add(build(aliases.subList(start, end), depth + 1));
+                start = end;
+            }
+            char[] keyArray = new char[keys.size()];
+            for (int i = 0; i < keyArray.length; i++) {
+                keyArray[i] = keys.get(i);
+            }
+            // An array of a generic type can only be created with a wildcard.
+            @SuppressWarnings("unchecked")
+            TrieNode<T>[] nextArray = (TrieNode<T>[]) next.toArray(new TrieNode<?>[next.size()]);
+            return new TrieNode<T>(keyArray, nextArray, alias, value);
+        }
+
+        @Nullable
+        TrieNode<T> next(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? next[index] : null;
+        }
+
+        void collect(List<String> aliases) {
+            if (alias != null) {
+                aliases.add(alias);
+            }
+            for (TrieNode<T> node : next) {
+                node.collect(aliases);
+            }
+        }
+
+    }
+
+    private static final class BkNode {
+
+        private final String alias;
+        private int[] distances = new int[2];
+        private BkNode[] children = new BkNode[2];
+        private int size;
+        private int reach;
+
+        BkNode(String alias) {
+            this.alias = alias;
+        }
+
+        void add(String alias) {
+            BkNode node = this;
+            while (true) {
+                int distance = distance(alias, node.alias);
+                BkNode child = null;
+                for (int i = 0; i < node.size; i++) {
+                    if (node.distances[i] == distance) {
+                        child = node.children[i];
+                        break;
+                    }
+                }
+                if (child == null) {
+                    if (node.size == node.children.length) {
+                        node.distances = Arrays.copyOf(node.distances, node.size * 2);
+                        node.children = Arrays.copyOf(node.children, node.size * 2);
+                    }
+                    node.distances[node.size] = distance;
+                    node.children[node.size] = new BkNode(alias);
+                    node.size++;
+                    node.reach = Math.max(node.reach, distance);
+                    return;
+                }
+                node = child;
+            }
+        }
+
+    }
+
+    private static final class Match implements Comparable<Match> {
+
+        private final String alias;
+        private final int distance;
+
+        Match(String alias, int distance) {
+            this.alias = alias;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Match o) {
+            return distance != o.distance ? Integer.compare(distance, o.distance) : alias.compareTo(o.alias);
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.command.CommandMessageFormatting;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.ArgumentParseException;
+import org.spongepowered.api.command.args.CommandArgs;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.command.args.parsing.SingleArg;
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parses the remaining arguments of an {@link be.rafvdl.commander.argument.All} parameter as a
+ * lazy sequence of values.
+ *
+ * <p>Parsing claims the remaining arguments, and checks right away those that can be checked without
+ * the game, which are numbers. The element of a single value parses them while
+ * the sequence is iterated, one argument at a time, so only the values of the current argument are
+ * held at once, and iteration stops after the limit without parsing the arguments after it. The
+ * values of a single argument, such as all entities a selector matches, are still parsed
+ * together. Every iteration parses the arguments again. An argument of any other type that is invalid
+ * is only found when it is reached, and iteration throws a {@link ParseFailure}.</p>
+ *
+ * <p>The element of a single value may read the game, so the sequence must be iterated on the main
+ * thread. Commands that run later or on another thread have the sequence copied into a list when
+ * their arguments are bound, see {@link #bind(Object, Class, boolean)}.</p>
+ */
+final class AllElement extends CommandElement {
+
+    private final String key;
+    private final CommandElement element;
+    private final int limit;
+
+    /**
+     * Creates an element.
+     *
+     * @param key     The key of the argument
+     * @param element The element of a single value
+     * @param limit   The maximum number of values, or 0 for no limit
+     */
+    AllElement(Text key, CommandElement element, int limit) {
+        super(key);
+        this.key = key.toPlain();
+        this.element = element;
+        this.limit = limit;
+    }
+
+    @Override
+    public void parse(CommandSource source, CommandArgs args, CommandContext context) throws ArgumentParseException {
+        List<SingleArg> remaining = new ArrayList<SingleArg>();
+        long[] bits = element instanceof NumberElement ? new long[1] : null;
+        while (args.hasNext()) {
+            String value = args.next();
+            if (bits != null) {
+                // Numbers do not need the game, an invalid one is reported before the command runs.
+                ((NumberElement) element).check(args, value, bits);
+            }
+            int start = args.getRawPosition();
+            remaining.add(new SingleArg(value, start, start + value.length() - 1));
+        }
+        context.putArg(key, new Values(source, args.getRaw(), remaining));
+    }
+
+    @Override
+    protected Object parseValue(CommandSource source, CommandArgs args) throws ArgumentParseException {
+        // Never called, parse is implemented as a whole.
+        return null;
+    }
+
+    @Override
+    public List<String> complete(CommandSource src, CommandArgs args, CommandContext context) {
+        while (args.hasNext()) {
+            Object start = args.getState();
+            try {
+                element.parse(src, args, context);
+            } catch (ArgumentParseException e) {
+                args.setState(start);
+                return element.complete(src, args, context);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Text getUsage(CommandSource src) {
+        return Text.of(element.getUsage(src), CommandMessageFormatting.STAR_TEXT);
+    }
+
+    /**
+     * Converts the parsed sequence to the type of the parameter.
+     *
+     * @param value The sequence, or null if the argument was not given
+     * @param type  The type of the parameter, an {@link Iterable}, a {@link Stream} or a
+     *              {@link Collection}
+     * @param eager Whether to parse all values now, for a command that does not run on this thread
+     *              right away
+     * @return The value of the parameter
+     * @throws ParseFailure If the values are parsed now and an argument is invalid
+     */
+    static Object bind(@Nullable Object value, Class<?> type, boolean eager) {
+        Iterable<?> values = value != null ? (Iterable<?>) value : Collections.emptyList();
+        if (eager || (type != Iterable.class && type != Stream.class)) {
+            List<Object> list = new ArrayList<Object>();
+            for (Object element : values) {
+                list.add(element);
+            }
+            values = list;
+        }
+        if (type == Stream.class) {
+            return StreamSupport.stream(values.spliterator(), false);
+        }
+        return values;
+    }
+
+    /**
+     * Checks whether a parameter type can hold the values of an {@link be.rafvdl.commander.argument.All}
+     * parameter.
+     *
+     * @param type The type
+     * @return true if it can
+     */
+    static boolean supports(Class<?> type) {
+        return type == Iterable.class || type == Stream.class || type == Collection.class || type == List.class;
+    }
+
+    /**
+     * Thrown while iterating when an argument cannot be parsed, and reported to the source like any
+     * other invalid argument.
+     */
+    static final class ParseFailure extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        final ArgumentParseException exception;
+
+        ParseFailure(ArgumentParseException exception) {
+            super(exception);
+            this.exception = exception;
+        }
+
+    }
+
+    private final class Values implements Iterable<Object> {
+
+        private final CommandSource source;
+        private final String raw;
+        private final List<SingleArg> args;
+
+        Values(CommandSource source, String raw, List<SingleArg> args) {
+            this.source = source;
+            this.raw = raw;
+            this.args = args;
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            final CommandArgs args = new CommandArgs(raw, this.args);
+            return new Iterator<Object>() {
+
+                private Iterator<Object> parsed = Collections.emptyIterator();
+                private int returned;
+
+                @Override
+                public boolean hasNext() {
+                    if (limit > 0 && returned >= limit) {
+                        return false;
+                    }
+                    while (!parsed.hasNext() && args.hasNext()) {
+                        CommandContext context = new CommandContext();
+                        try {
+                            element.parse(source, args, context);
+                        } catch (ArgumentParseException e) {
+                            throw new ParseFailure(e);
+                        }
+                        parsed = context.<Object>getAll(key).iterator();
+                    }
+                    return parsed.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    returned++;
+                    return parsed.next();
+                }
+
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,192 @@
+package be.rafvdl.commander;
+
+import com.google.common.base.Defaults;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A precompiled plan that turns a {@link CommandContext} into the {@link ArgumentFrame} of a command
+ * method.
+ *
+ * <p>The plan is built once per method. Every parameter gets a slot which already knows its key,
+ * whether it reads one value or the whole collection, and which default to use for a primitive
+ * parameter whose argument was not given. The frame itself is reused per thread, so binding
+ * allocates no frame in the common, non reentrant case.</p>
+ *
+ * <p>The values are read through the {@link CommandContext} Sponge parsed into, which only hands
+ * out a present value wrapped in an {@code Optional}, and holds primitives boxed. A missing
+ * argument is detected through {@link CommandContext#hasAny(String)} and costs no allocation. The
+ * {@link CompiledParser} skips the context and writes the values into the frame directly, numbers
+ * without boxing them.</p>
+ */
+final class ArgumentBinding {
+
+    private final Slot[] slots;
+    private final int size;
+    private final ThreadLocal<Frame> frames = new ThreadLocal<Frame>() {
+        @Override
+        protected Frame initialValue() {
+            return new Frame(new ArgumentFrame(size));
+        }
+    };
+
+    private ArgumentBinding(Slot[] slots) {
+        this.slots = slots;
+        this.size = slots.length + 1;
+    }
+
+    /**
+     * Compiles the binding plan of a method.
+     *
+     * @param parameters The parameter types, of which the first is the {@code CommandSource}
+     * @param arguments  The arguments of the remaining parameters
+     * @param eager      Whether to parse the values of {@link be.rafvdl.commander.argument.All}
+     *                   parameters while binding, for a method that is not invoked right away
+     * @return The binding plan
+     */
+    static ArgumentBinding compile(Class<?>[] parameters, List<Commander.Argument> arguments, boolean eager) {
+        checkArgument(parameters.length == arguments.size() + 1, "Expected " + arguments.size() + " arguments, got " + (parameters.length - 1));
+
+        Slot[] slots = new Slot[arguments.size()];
+        for (int i = 0; i < slots.length; i++) {
+            Commander.Argument argument = arguments.get(i);
+            Class<?> parameter = parameters[i + 1];
+            if (argument.collection) {
+                slots[i] = new CollectionSlot(argument.key, parameter, eager);
+            } else if (parameter.isPrimitive()) {
+                slots[i] = new PrimitiveSlot(argument.key, parameter);
+            } else {
+                slots[i] = new SingleSlot(argument.key);
+            }
+        }
+        return new ArgumentBinding(slots);
+    }
+
+    /**
+     * Binds the parsed arguments to an argument frame.
+     *
+     * <p>The returned frame must be handed back through {@link #release(ArgumentFrame)} once the
+     * method has been invoked. If binding fails, the frame is released before the failure is
+     * thrown.</p>
+     *
+     * @param src  The source
+     * @param args The parsed arguments
+     * @return The argument frame
+     */
+    ArgumentFrame bind(CommandSource src, CommandContext args) {
+        Frame pooled = frames.get();
+        ArgumentFrame frame;
+        if (pooled.busy) {
+            // A command dispatching another command on the same thread.
+            frame = new ArgumentFrame(size);
+        } else {
+            pooled.busy = true;
+            frame = pooled.frame;
+        }
+        boolean bound = false;
+        try {
+            frame.values[0] = src;
+            for (int i = 0; i < slots.length; i++) {
+                slots[i].bind(args, frame, i + 1);
+            }
+            bound = true;
+            return frame;
+        } finally {
+            if (!bound) {
+                release(frame);
+            }
+        }
+    }
+
+    /**
+     * Releases an argument frame obtained through {@link #bind(CommandSource, CommandContext)}.
+     *
+     * @param frame The argument frame
+     */
+    void release(ArgumentFrame frame) {
+        frame.clear();
+        Frame pooled = frames.get();
+        if (pooled.frame == frame) {
+            pooled.busy = false;
+        }
+    }
+
+    private static final class Frame {
+
+        private final ArgumentFrame frame;
+        private boolean busy;
+
+        Frame(ArgumentFrame frame) {
+            this.frame = frame;
+        }
+
+    }
+
+    private static abstract class Slot {
+
+        final String key;
+
+        Slot(String key) {
+            this.key = key;
+        }
+
+        abstract void bind(CommandContext args, ArgumentFrame frame, int index);
+
+    }
+
+    private static final class SingleSlot extends Slot {
+
+        SingleSlot(String key) {
+            super(key);
+        }
+
+        @Override
+        void bind(CommandContext args, ArgumentFrame frame, int index) {
+            frame.values[index] = args.hasAny(key) ? args.getOne(key).orElse(null) : null;
+        }
+
+    }
+
+    private static final class CollectionSlot extends Slot {
+
+        private final Class<?> type;
+        private final boolean eager;
+
+        CollectionSlot(String key, Class<?> type, boolean eager) {
+            super(key);
+            this.type = type;
+            this.eager = eager;
+        }
+
+        @Override
+        void bind(CommandContext args, ArgumentFrame frame, int index) {
+            frame.values[index] = AllElement.bind(args.hasAny(key) ? args.getOne(key).orElse(null) : null, type, eager);
+        }
+
+    }
+
+    private static final class PrimitiveSlot extends Slot {
+
+        private final Class<?> type;
+        private final Object defaultValue;
+
+        PrimitiveSlot(String key, Class<?> type) {
+            super(key);
+            this.type = type;
+            this.defaultValue = Defaults.defaultValue(type);
+        }
+
+        @Override
+        void bind(CommandContext args, ArgumentFrame frame, int index) {
+            Object value = args.hasAny(key) ? args.getOne(key).orElse(null) : null;
+            // A number goes to the primitive lane, so the value Sponge boxed is not passed on.
+            frame.set(index, type, value != null ? value : defaultValue);
+        }
+
+    }
+
+}
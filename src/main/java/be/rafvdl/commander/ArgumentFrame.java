@@ -0,0 +1,113 @@
+package be.rafvdl.commander;
+
+import java.util.Arrays;
+
+/**
+ * The arguments of a command method, in two lanes of the same length.
+ *
+ * <p>A parameter of a numeric primitive type, as told by {@link #isPrimitive(Class)}, takes its
+ * value from {@link #primitives}, as raw bits: integers as their value, a {@code double} as
+ * {@link Double#doubleToRawLongBits(double)} and a {@code float} as
+ * {@link Float#floatToRawIntBits(float)}. Those values are parsed and passed on without ever being
+ * boxed. Every other parameter takes its value from {@link #values}. Index 0 is the
+ * {@code CommandSource} in both.</p>
+ */
+final class ArgumentFrame {
+
+    final Object[] values;
+    final long[] primitives;
+
+    ArgumentFrame(int size) {
+        this.values = new Object[size];
+        this.primitives = new long[size];
+    }
+
+    private ArgumentFrame(Object[] values, long[] primitives) {
+        this.values = values;
+        this.primitives = primitives;
+    }
+
+    /**
+     * Copies this frame, for a method that runs after the frame is reused.
+     *
+     * @return The copy
+     */
+    ArgumentFrame copy() {
+        return new ArgumentFrame(values.clone(), primitives.clone());
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        Arrays.fill(primitives, 0);
+    }
+
+    /**
+     * Stores a value that was already boxed, such as one parsed by Sponge, in the lane of its
+     * parameter.
+     *
+     * @param index The index of the parameter
+     * @param type  The type of the parameter
+     * @param value The value, or null for the default of the type
+     */
+    void set(int index, Class<?> type, Object value) {
+        if (isPrimitive(type)) {
+            primitives[index] = value != null ? bits(type, (Number) value) : 0;
+        } else {
+            values[index] = value;
+        }
+    }
+
+    /**
+     * Checks whether a parameter of the given type takes its value from the primitive lane.
+     *
+     * @param type The type of the parameter
+     * @return true if it does
+     */
+    static boolean isPrimitive(Class<?> type) {
+        return NumberElement.supports(type);
+    }
+
+    /**
+     * Gets the raw bits of a number, as held in the primitive lane.
+     *
+     * @param type  The numeric primitive type
+     * @param value The number
+     * @return The bits
+     */
+    static long bits(Class<?> type, Number value) {
+        if (type == double.class) {
+            return Double.doubleToRawLongBits(value.doubleValue());
+        }
+        if (type == float.class) {
+            return Float.floatToRawIntBits(value.floatValue());
+        }
+        return value.longValue();
+    }
+
+    /**
+     * Boxes the raw bits of a number, for the callers that cannot take the primitive lane.
+     *
+     * @param type The numeric primitive type
+     * @param bits The bits
+     * @return The number
+     */
+    static Number box(Class<?> type, long bits) {
+        if (type == int.class) {
+            return (int) bits;
+        }
+        if (type == long.class) {
+            return bits;
+        }
+        if (type == double.class) {
+            return Double.longBitsToDouble(bits);
+        }
+        if (type == float.class) {
+            return Float.intBitsToFloat((int) bits);
+        }
+        if (type == short.class) {
+            return (short) bits;
+        }
+        return (byte) bits;
+    }
+
+}
@@ -0,0 +1,39 @@
+package be.rafvdl.commander;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs a command method on {@link Commander}'s worker pool instead of the main thread.
+ *
+ * <p>The command returns {@code CommandResult.success()} immediately. The {@code CommandResult}
+ * of the method itself is discarded, as the command manager has moved on by the time it exists.
+ * Errors thrown by the method are reported to the source on the main thread once it has finished.
+ * The method may return a {@link java.util.concurrent.CompletableFuture} of the
+ * {@code CommandResult} as well.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface Async {
+
+    /**
+     * The maximum number of executions of this command that may run at the same time. An
+     * execution counts until the method returns, or until the future it returns completes, even
+     * after it timed out.
+     *
+     * @return the limit, or 0 for no limit
+     */
+    int concurrency() default 0;
+
+    /**
+     * The time in milliseconds after which the source is told that the command timed out. An
+     * execution that has not started by then is dropped. One that is running is not interrupted,
+     * but runs to its end, and its outcome is no longer reported to the source.
+     *
+     * @return the timeout, or 0 for no timeout
+     */
+    long timeout() default 0;
+
+}
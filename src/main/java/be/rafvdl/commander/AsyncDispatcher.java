@@ -0,0 +1,218 @@
+package be.rafvdl.commander;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.spongepowered.api.Game;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs {@link Async} commands off the main thread and hands their outcome back to it.
+ *
+ * <p>Only failures are handed back; the {@code CommandResult} of a method that ran on the worker
+ * pool is discarded, as the command manager was given {@code CommandResult.success()} right
+ * away.</p>
+ */
+final class AsyncDispatcher {
+
+    private static final int QUEUE_SIZE = 1024;
+
+    private final Object plugin;
+    private final Game game;
+    private volatile ExecutorService executor;
+
+    AsyncDispatcher(Object plugin, Game game) {
+        this.plugin = plugin;
+        this.game = game;
+    }
+
+    void setExecutor(ExecutorService executor) {
+        this.executor = checkNotNull(executor);
+    }
+
+    ExecutorService executor() {
+        ExecutorService executor = this.executor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.executor;
+                if (executor == null) {
+                    int threads = Runtime.getRuntime().availableProcessors();
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+                            new ThreadFactoryBuilder().setNameFormat("Commander Async #%d").setDaemon(true).build());
+                    pool.allowCoreThreadTimeOut(true);
+                    this.executor = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Runs a command method on the worker pool.
+     *
+     * @param src       The source
+     * @param invoker   The invoker of the command method
+     * @param arguments The bound arguments, which must not be reused by the caller
+     * @param permits   The permits limiting concurrent executions, or null
+     * @param timeout   The timeout in milliseconds, or 0
+     * @return The result to hand to the command manager right away, which is always a success
+     * @throws CommandException If the command cannot be run now
+     */
+    CommandResult dispatch(CommandSource src, final CommandInvoker invoker, final ArgumentFrame arguments, @Nullable final Semaphore permits,
+            long timeout) throws CommandException {
+        if (permits != null && !permits.tryAcquire()) {
+            throw new CommandException(Text.of("This command is already running, try again later."));
+        }
+        final CompletableFuture<Object> result = new CompletableFuture<Object>();
+        // Claimed by the worker when it starts, or by the timeout when it never did.
+        final AtomicBoolean started = new AtomicBoolean();
+        // Set by the timeout, after which the outcome is no longer reported to the source.
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final Future<?> task;
+        try {
+            task = executor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (!started.compareAndSet(false, true)) {
+                        return;
+                    }
+                    // The permit is held until the command method returns, even after a timeout,
+                    // as the method is left to run to its end.
+                    boolean release = permits != null;
+                    try {
+                        Object value = invoker.invoke(arguments.values, arguments.primitives);
+                        if (release && value instanceof CompletableFuture) {
+                            release = false;
+                            ((CompletableFuture<?>) value).whenComplete(new BiConsumer<Object, Throwable>() {
+                                @Override
+                                public void accept(Object value, Throwable error) {
+                                    permits.release();
+                                }
+                            });
+                        }
+                        complete(value, result);
+                    } catch (AllElement.ParseFailure e) {
+                        result.completeExceptionally(e.exception);
+                    } catch (Throwable t) {
+                        if (timedOut.get()) {
+                            // The source was told about the timeout, the error would be lost.
+                            t.printStackTrace();
+                        }
+                        result.completeExceptionally(t);
+                    } finally {
+                        if (release) {
+                            permits.release();
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (permits != null) {
+                permits.release();
+            }
+            throw new CommandException(Text.of("The server is too busy to run this command, try again later."));
+        }
+        watch(src, result, timeout, new Runnable() {
+            @Override
+            public void run() {
+                timedOut.set(true);
+                if (started.compareAndSet(false, true) && permits != null) {
+                    permits.release();
+                }
+                // Interrupting would break plugin code halfway, a running method is left alone.
+                task.cancel(false);
+            }
+        });
+        return CommandResult.success();
+    }
+
+    /**
+     * Watches the future returned by a command method that ran on the main thread.
+     *
+     * @param src    The source
+     * @param future The future returned by the method
+     */
+    void watch(CommandSource src, CompletableFuture<?> future) {
+        CompletableFuture<Object> result = new CompletableFuture<Object>();
+        complete(future, result);
+        watch(src, result, 0, null);
+    }
+
+    /**
+     * Reports the outcome of a command to its source.
+     *
+     * @param onTimeout Run when the command times out, or null
+     */
+    private void watch(final CommandSource src, final CompletableFuture<Object> result, long timeout, @Nullable final Runnable onTimeout) {
+        final Task timer;
+        if (timeout > 0) {
+            timer = game.getScheduler().createTaskBuilder().async().delay(timeout, TimeUnit.MILLISECONDS).execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.completeExceptionally(new TimeoutException()) && onTimeout != null) {
+                        onTimeout.run();
+                    }
+                }
+            }).submit(plugin);
+        } else {
+            timer = null;
+        }
+        result.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable error) {
+                if (timer != null) {
+                    timer.cancel();
+                }
+                if (error != null) {
+                    report(src, error);
+                }
+            }
+        });
+    }
+
+    private void report(final CommandSource src, final Throwable error) {
+        game.getScheduler().createTaskBuilder().execute(new Runnable() {
+            @Override
+            public void run() {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof CommandException && ((CommandException) cause).getText() != null) {
+                    src.sendMessage(((CommandException) cause).getText());
+                } else if (cause instanceof TimeoutException) {
+                    src.sendMessage(Text.of("The command is taking too long, its result will not be reported."));
+                } else {
+                    cause.printStackTrace();
+                    src.sendMessage(Text.of("An error occurred while running this command."));
+                }
+            }
+        }).submit(plugin);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void complete(Object value, final CompletableFuture<Object> result) {
+        if (!(value instanceof CompletableFuture)) {
+            result.complete(value);
+            return;
+        }
+        ((CompletableFuture<Object>) value).whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable error) {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            }
+        });
+    }
+
+}
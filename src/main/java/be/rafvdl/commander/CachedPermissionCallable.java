@@ -0,0 +1,48 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.command.CommandCallable;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandPermissionException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks the permission of a command through a {@link PermissionCache}, in place of the check of
+ * its {@link org.spongepowered.api.command.spec.CommandSpec}.
+ */
+class CachedPermissionCallable extends ForwardingCommandCallable {
+
+    private final PermissionCache permissions;
+    private final String permission;
+
+    CachedPermissionCallable(CommandCallable callable, PermissionCache permissions, String permission) {
+        super(callable);
+        this.permissions = permissions;
+        this.permission = permission;
+    }
+
+    @Override
+    public CommandResult process(CommandSource source, String arguments) throws CommandException {
+        if (!testPermission(source)) {
+            throw new CommandPermissionException();
+        }
+        return callable.process(source, arguments);
+    }
+
+    @Override
+    public List<String> getSuggestions(CommandSource source, String arguments) throws CommandException {
+        if (!testPermission(source)) {
+            return Collections.emptyList();
+        }
+        return callable.getSuggestions(source, arguments);
+    }
+
+    @Override
+    public boolean testPermission(CommandSource source) {
+        return permissions.hasPermission(source, permission);
+    }
+
+}
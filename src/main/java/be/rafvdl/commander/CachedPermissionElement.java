@@ -0,0 +1,64 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.ArgumentParseException;
+import org.spongepowered.api.command.args.CommandArgs;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.text.Text;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.spongepowered.api.util.SpongeApiTranslationHelper.t;
+
+/**
+ * Like {@link org.spongepowered.api.command.args.GenericArguments#requiringPermission(CommandElement, String)},
+ * but checks the permission through a {@link PermissionCache} and leaves the argument out of the
+ * usage shown to a source without the permission.
+ */
+final class CachedPermissionElement extends CommandElement {
+
+    private final CommandElement element;
+    private final PermissionCache permissions;
+    private final String permission;
+
+    CachedPermissionElement(CommandElement element, PermissionCache permissions, String permission) {
+        super(element.getKey());
+        this.element = element;
+        this.permissions = permissions;
+        this.permission = permission;
+    }
+
+    @Override
+    public void parse(CommandSource source, CommandArgs args, CommandContext context) throws ArgumentParseException {
+        if (!permissions.hasPermission(source, permission)) {
+            Text key = getKey();
+            throw args.createError(t("You do not have permission to use the %s argument", key != null ? key : Text.of("unknown")));
+        }
+        element.parse(source, args, context);
+    }
+
+    @Override
+    protected Object parseValue(CommandSource source, CommandArgs args) throws ArgumentParseException {
+        // Never called, parse is delegated as a whole.
+        return null;
+    }
+
+    @Override
+    public List<String> complete(CommandSource src, CommandArgs args, CommandContext context) {
+        if (!permissions.hasPermission(src, permission)) {
+            return Collections.emptyList();
+        }
+        return element.complete(src, args, context);
+    }
+
+    @Override
+    public Text getUsage(CommandSource src) {
+        if (!permissions.hasPermission(src, permission)) {
+            return Text.EMPTY;
+        }
+        return element.getUsage(src);
+    }
+
+}
@@ -0,0 +1,336 @@
+package be.rafvdl.commander;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A sorted prefix index over the choices of a {@link be.rafvdl.commander.argument.Choices}
+ * dependency.
+ *
+ * <p>The keys are kept in a sorted array next to their values, so completing a prefix is two
+ * binary searches and a view on the matching range, instead of a scan over the whole map. Updates
+ * build new arrays and swap them in, so readers never lock and never see a partially updated
+ * index, even while the map itself is being changed on another thread. An update of a few keys
+ * merges them into copies of the current arrays instead of sorting the whole map again.</p>
+ *
+ * <p>An index may instead be backed by a {@link ChoiceProvider}, in which case every read checks
+ * the version of the provider and, if it changed, reloads the choices in the background while
+ * reads keep using the current snapshot.</p>
+ */
+final class ChoiceIndex {
+
+    private static final String[] EMPTY = new String[0];
+
+    private final boolean ignoreCase;
+    private final Executor loader;
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile Snapshot snapshot = new Snapshot(EMPTY, EMPTY, new Object[0]);
+    @Nullable private volatile ChoiceProvider<?> provider;
+    private volatile long loadedVersion;
+    private volatile boolean stale;
+
+    /**
+     * Creates an index.
+     *
+     * @param choices    The map or {@link ChoiceProvider} of the choices
+     * @param ignoreCase Whether keys are matched regardless of case
+     * @param loader     The executor on which choice providers are loaded
+     */
+    ChoiceIndex(Object choices, boolean ignoreCase, Executor loader) {
+        this.ignoreCase = ignoreCase;
+        this.loader = loader;
+        source(choices);
+    }
+
+    /**
+     * Replaces the source of the choices.
+     *
+     * @param choices The map or {@link ChoiceProvider} of the choices
+     */
+    synchronized void source(Object choices) {
+        if (choices instanceof ChoiceProvider) {
+            this.provider = (ChoiceProvider<?>) choices;
+            this.stale = true;
+            poll();
+        } else {
+            this.provider = null;
+            rebuild((Map<?, ?>) choices);
+        }
+    }
+
+    /**
+     * Marks the choices of the provider as changed, whatever its version.
+     */
+    void invalidate() {
+        this.stale = true;
+    }
+
+    /**
+     * Starts loading the choices of the provider if its version changed and no load is running.
+     */
+    private void poll() {
+        final ChoiceProvider<?> provider = this.provider;
+        if (provider == null || (!stale && provider.version() == loadedVersion) || !loading.compareAndSet(false, true)) {
+            return;
+        }
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Read the version first, a change while loading makes the next read load again.
+                stale = false;
+                long version = provider.version();
+                try {
+                    Map<String, ?> choices = provider.load();
+                    synchronized (ChoiceIndex.this) {
+                        if (ChoiceIndex.this.provider == provider) {
+                            rebuild(choices);
+                        }
+                    }
+                } catch (Exception e) {
+                    // Keep the previous choices until the version changes again.
+                    System.err.println("Could not load choices from " + provider + ".");
+                    e.printStackTrace();
+                } finally {
+                    loadedVersion = version;
+                    loading.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the keys starting with the given prefix, in sorted order.
+     *
+     * @param prefix The prefix
+     * @param limit  The maximum number of keys, or 0 for no limit
+     * @return The keys
+     */
+    List<String> complete(String prefix, int limit) {
+        poll();
+        Snapshot snapshot = this.snapshot;
+        String folded = fold(prefix);
+        int from = lowerBound(snapshot.sortKeys, folded);
+        int to = upperBound(snapshot.sortKeys, folded, from);
+        if (limit > 0 && to - from > limit) {
+            to = from + limit;
+        }
+        if (from == to) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(snapshot.keys).subList(from, to));
+    }
+
+    /**
+     * Finds the value of the choice that matches the given input, preferring a choice of the same
+     * case.
+     *
+     * @param input The input
+     * @return The value, or null if no choice matches
+     */
+    @Nullable
+    Object find(String input) {
+        poll();
+        Snapshot snapshot = this.snapshot;
+        String folded = fold(input);
+        int index = lowerBound(snapshot.sortKeys, folded);
+        int match = -1;
+        for (int i = index; i < snapshot.sortKeys.length && snapshot.sortKeys[i].equals(folded); i++) {
+            if (snapshot.keys[i].equals(input)) {
+                return snapshot.values[i];
+            }
+            if (match < 0) {
+                match = i;
+            }
+        }
+        return match >= 0 ? snapshot.values[match] : null;
+    }
+
+    /**
+     * Gets all keys, in sorted order.
+     *
+     * @return The keys
+     */
+    List<String> keys() {
+        poll();
+        return Collections.unmodifiableList(Arrays.asList(snapshot.keys));
+    }
+
+    /**
+     * Gets an object that changes whenever the keys of the index change.
+     *
+     * @return The version
+     */
+    Object version() {
+        return snapshot;
+    }
+
+    /**
+     * Replaces all choices of the index.
+     *
+     * @param choices The choices, by their string keys
+     */
+    synchronized void rebuild(Map<?, ?> choices) {
+        // Copy first, the map may be changed while it is sorted.
+        TreeMap<String, Object> sorted = new TreeMap<String, Object>(order());
+        for (Map.Entry<?, ?> entry : choices.entrySet()) {
+            if (entry.getValue() != null) {
+                sorted.put((String) entry.getKey(), entry.getValue());
+            }
+        }
+        this.snapshot = snapshot(sorted);
+    }
+
+    /**
+     * Brings the given keys in line with the map, adding or replacing the ones it contains and
+     * removing the others.
+     *
+     * <p>The changed keys are found in the current snapshot by binary search and merged into
+     * copies of its arrays, so the rest of the map is neither read nor sorted again.</p>
+     *
+     * @param map  The map
+     * @param keys The changed keys
+     */
+    synchronized void update(Map<String, ?> map, String... keys) {
+        Snapshot snapshot = this.snapshot;
+        Comparator<String> order = order();
+        String[] changed = keys.clone();
+        Arrays.sort(changed, order);
+        // The position of each change in the snapshot, negative for a key it does not hold yet.
+        int[] positions = new int[changed.length];
+        Object[] values = new Object[changed.length];
+        int count = 0;
+        int size = snapshot.keys.length;
+        for (int i = 0; i < changed.length; i++) {
+            if (i > 0 && changed[i].equals(changed[i - 1])) {
+                continue;
+            }
+            int position = Arrays.binarySearch(snapshot.keys, changed[i], order);
+            Object value = map.get(changed[i]);
+            if (position < 0 && value == null) {
+                continue;
+            }
+            if (position < 0) {
+                size++;
+            } else if (value == null) {
+                size--;
+            }
+            changed[count] = changed[i];
+            positions[count] = position;
+            values[count] = value;
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+        String[] newKeys = new String[size];
+        String[] newSortKeys = ignoreCase ? new String[size] : newKeys;
+        Object[] newValues = new Object[size];
+        int from = 0;
+        int to = 0;
+        for (int i = 0; i < count; i++) {
+            int position = positions[i] >= 0 ? positions[i] : -positions[i] - 1;
+            to = copy(snapshot, from, position, newKeys, newSortKeys, newValues, to);
+            from = positions[i] >= 0 ? position + 1 : position;
+            if (values[i] != null) {
+                newKeys[to] = changed[i];
+                if (ignoreCase) {
+                    newSortKeys[to] = fold(changed[i]);
+                }
+                newValues[to] = values[i];
+                to++;
+            }
+        }
+        copy(snapshot, from, snapshot.keys.length, newKeys, newSortKeys, newValues, to);
+        this.snapshot = new Snapshot(newKeys, newSortKeys, newValues);
+    }
+
+    /**
+     * Copies a range of a snapshot into new arrays.
+     *
+     * @return The index in the new arrays after the copied range
+     */
+    private int copy(Snapshot snapshot, int from, int to, String[] keys, String[] sortKeys, Object[] values, int index) {
+        int length = to - from;
+        System.arraycopy(snapshot.keys, from, keys, index, length);
+        if (ignoreCase) {
+            System.arraycopy(snapshot.sortKeys, from, sortKeys, index, length);
+        }
+        System.arraycopy(snapshot.values, from, values, index, length);
+        return index + length;
+    }
+
+    private Comparator<String> order() {
+        return ignoreCase ? FOLDED_ORDER : Comparator.<String>naturalOrder();
+    }
+
+    private Snapshot snapshot(SortedMap<String, Object> choices) {
+        String[] keys = choices.keySet().toArray(new String[choices.size()]);
+        Object[] values = choices.values().toArray();
+        if (!ignoreCase) {
+            return new Snapshot(keys, keys, values);
+        }
+        String[] sortKeys = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            sortKeys[i] = fold(keys[i]);
+        }
+        return new Snapshot(keys, sortKeys, values);
+    }
+
+    private String fold(String key) {
+        return ignoreCase ? key.toLowerCase(Locale.ROOT) : key;
+    }
+
+    private static int lowerBound(String[] sortKeys, String key) {
+        int low = 0;
+        int high = sortKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortKeys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(String[] sortKeys, String prefix, int from) {
+        // All keys from the lower bound on start with the prefix, up to the first one which doesn't.
+        int low = from;
+        int high = sortKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortKeys[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final Comparator<String> FOLDED_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String o1, String o2) {
+            int result = o1.toLowerCase(Locale.ROOT).compareTo(o2.toLowerCase(Locale.ROOT));
+            return result != 0 ? result : o1.compareTo(o2);
+        }
+    };
+
+    private static final class Snapshot {
+
+        private final String[] keys;
+        private final String[] sortKeys;
+        private final Object[] values;
+
+        Snapshot(String[] keys, String[] sortKeys, Object[] values) {
+            this.keys = keys;
+            this.sortKeys = sortKeys;
+            this.values = values;
+        }
+
+    }
+
+}
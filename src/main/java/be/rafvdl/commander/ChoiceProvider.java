@@ -0,0 +1,35 @@
+package be.rafvdl.commander;
+
+import java.util.Map;
+
+/**
+ * Supplies the choices of a {@link be.rafvdl.commander.argument.Choices} dependency from a source
+ * that is too expensive to read while a command is parsed, such as a database.
+ *
+ * <p>Commands parse and complete from a copy of the last loaded choices. When the version differs
+ * from the version of that copy, the choices are loaded again on an async thread and swapped in
+ * once loaded; until then the previous choices are used, so parsing never waits for the loader.</p>
+ *
+ * @param <T> The type of the values
+ */
+public interface ChoiceProvider<T> {
+
+    /**
+     * Gets the current version of the choices, which must change whenever the choices change.
+     *
+     * <p>This is called on every parse and completion, and should be cheap, such as reading a
+     * counter.</p>
+     *
+     * @return The version
+     */
+    long version();
+
+    /**
+     * Loads the choices. This is called on an async thread.
+     *
+     * @return The choices
+     * @throws Exception If the choices cannot be loaded, the previous choices are kept
+     */
+    Map<String, T> load() throws Exception;
+
+}
@@ -9,7 +9,7 @@ import java.lang.annotation.Target;
  * An annotation used to mark a {@link Commander} plugin.
  */
 @Retention(RetentionPolicy.RUNTIME)
-@Target({ElementType.TYPE, ElementType.METHOD})
+@Target({ElementType.TYPE, ElementType.METHOD, ElementType.FIELD})
 public @interface Command {
 
     String[] value() default {};
@@ -0,0 +1,248 @@
+package be.rafvdl.commander;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Calls a {@link Command} method with the two lanes of an {@link ArgumentFrame}.
+ *
+ * <p>Invokers are created once when a command is registered. Whenever possible the method is
+ * resolved to a {@link MethodHandle} bound to its receiver, so that dispatching a command does not
+ * go through {@link Method#invoke(Object, Object...)} and its access checks. The handle reads every
+ * parameter from its lane, converting the raw bits of a numeric primitive without boxing it. It is
+ * held in a static final field of a class of its own, defined by {@link ConstantInvokers}, so the
+ * JIT can inline the method into the invoker. A handle in an instance field is only used when no
+ * class can be defined, and reflection, which boxes the primitives, when no handle can be
+ * obtained.</p>
+ */
+abstract class CommandInvoker {
+
+    private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object[].class, long[].class);
+    private static final MethodHandle OBJECT_ELEMENT = MethodHandles.arrayElementGetter(Object[].class);
+    private static final MethodHandle LONG_ELEMENT = MethodHandles.arrayElementGetter(long[].class);
+    private static final MethodHandle LONG_BITS_TO_DOUBLE;
+    private static final MethodHandle INT_BITS_TO_FLOAT;
+
+    static {
+        try {
+            LONG_BITS_TO_DOUBLE = MethodHandles.publicLookup().findStatic(Double.class, "longBitsToDouble",
+                    MethodType.methodType(double.class, long.class));
+            INT_BITS_TO_FLOAT = MethodHandles.publicLookup().findStatic(Float.class, "intBitsToFloat",
+                    MethodType.methodType(float.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Invokes the method.
+     *
+     * @param arguments  The reference lane, including the leading {@code CommandSource}
+     * @param primitives The primitive lane
+     * @return The return value of the method
+     * @throws Throwable Anything thrown by the method itself
+     */
+    abstract Object invoke(Object[] arguments, long[] primitives) throws Throwable;
+
+    /**
+     * Creates the fastest available invoker for the given method.
+     *
+     * @param obj    The receiver, or null for static methods
+     * @param method The method
+     * @return The invoker
+     */
+    static CommandInvoker of(Object obj, Method method) {
+        checkNotNull(method);
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        try {
+            method.setAccessible(true);
+        } catch (SecurityException e) {
+            return new ReflectiveInvoker(obj, method);
+        }
+        if (!isStatic && obj == null) {
+            // Nothing to bind the handle to, keep the old behaviour.
+            return new ReflectiveInvoker(obj, method);
+        }
+        try {
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            if (!isStatic) {
+                handle = handle.bindTo(obj);
+            }
+            return constant(spread(handle, 0).asType(GENERIC_TYPE));
+        } catch (IllegalAccessException e) {
+            return new ReflectiveInvoker(obj, method);
+        }
+    }
+
+    /**
+     * Creates the fastest available invoker for the given constructor, which returns the new
+     * instance.
+     *
+     * @param constructor The constructor
+     * @return The invoker
+     */
+    static CommandInvoker of(Constructor<?> constructor) {
+        checkNotNull(constructor);
+        try {
+            constructor.setAccessible(true);
+        } catch (SecurityException e) {
+            return new ReflectiveConstructorInvoker(constructor);
+        }
+        try {
+            MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor);
+            return constant(spread(handle, 0).asType(GENERIC_TYPE));
+        } catch (IllegalAccessException e) {
+            return new ReflectiveConstructorInvoker(constructor);
+        }
+    }
+
+    /**
+     * Creates an invoker for a method called by a generated {@link CommandRegistrar}.
+     *
+     * @param invoker The generated invoker
+     * @return The invoker
+     */
+    static CommandInvoker of(final CommandRegistrar.Invoker invoker) {
+        checkNotNull(invoker);
+        return new CommandInvoker() {
+            @Override
+            Object invoke(Object[] arguments, long[] primitives) throws Throwable {
+                return invoker.invoke(arguments, primitives);
+            }
+        };
+    }
+
+    /**
+     * Adapts a handle to take its parameters from the two lanes of an {@link ArgumentFrame}, the
+     * parameter at index {@code i} past the leading ones from index {@code i} of its lane.
+     *
+     * @param target  The handle
+     * @param leading The number of leading parameters which are kept as they are
+     * @return The handle, taking the leading parameters, the reference lane and the primitive lane
+     */
+    static MethodHandle spread(MethodHandle target, int leading) {
+        MethodType type = target.type();
+        int count = type.parameterCount() - leading;
+        MethodHandle[] filters = new MethodHandle[count];
+        int[] reorder = new int[type.parameterCount()];
+        for (int i = 0; i < leading; i++) {
+            reorder[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            Class<?> parameter = type.parameterType(leading + i);
+            if (ArgumentFrame.isPrimitive(parameter)) {
+                filters[i] = primitive(parameter, i);
+                reorder[leading + i] = leading + 1;
+            } else {
+                filters[i] = MethodHandles.insertArguments(OBJECT_ELEMENT, 1, i).asType(MethodType.methodType(parameter, Object[].class));
+                reorder[leading + i] = leading;
+            }
+        }
+        List<Class<?>> parameters = new ArrayList<Class<?>>(type.parameterList().subList(0, leading));
+        parameters.add(Object[].class);
+        parameters.add(long[].class);
+        return MethodHandles.permuteArguments(MethodHandles.filterArguments(target, leading, filters),
+                MethodType.methodType(type.returnType(), parameters), reorder);
+    }
+
+    private static MethodHandle primitive(Class<?> type, int index) {
+        MethodHandle element = MethodHandles.insertArguments(LONG_ELEMENT, 1, index);
+        if (type == double.class) {
+            return MethodHandles.filterReturnValue(element, LONG_BITS_TO_DOUBLE);
+        }
+        if (type == float.class) {
+            return MethodHandles.filterReturnValue(MethodHandles.explicitCastArguments(element,
+                    MethodType.methodType(int.class, long[].class)), INT_BITS_TO_FLOAT);
+        }
+        // Narrows the bits to int, short or byte.
+        return MethodHandles.explicitCastArguments(element, MethodType.methodType(type, long[].class));
+    }
+
+    /**
+     * Boxes the primitive lane into a copy of the reference lane, for a method called through
+     * reflection.
+     */
+    static Object[] boxed(Class<?>[] parameters, Object[] arguments, long[] primitives) {
+        Object[] boxed = arguments.clone();
+        for (int i = 0; i < parameters.length; i++) {
+            if (ArgumentFrame.isPrimitive(parameters[i])) {
+                boxed[i] = ArgumentFrame.box(parameters[i], primitives[i]);
+            }
+        }
+        return boxed;
+    }
+
+    private static CommandInvoker constant(MethodHandle handle) {
+        CommandInvoker invoker = ConstantInvokers.of(handle);
+        return invoker != null ? invoker : new HandleInvoker(handle);
+    }
+
+    private static final class HandleInvoker extends CommandInvoker {
+
+        private final MethodHandle handle;
+
+        HandleInvoker(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        Object invoke(Object[] arguments, long[] primitives) throws Throwable {
+            return (Object) handle.invokeExact(arguments, primitives);
+        }
+
+    }
+
+    private static final class ReflectiveConstructorInvoker extends CommandInvoker {
+
+        private final Constructor<?> constructor;
+        private final Class<?>[] parameters;
+
+        ReflectiveConstructorInvoker(Constructor<?> constructor) {
+            this.constructor = constructor;
+            this.parameters = constructor.getParameterTypes();
+        }
+
+        @Override
+        Object invoke(Object[] arguments, long[] primitives) throws Throwable {
+            try {
+                return constructor.newInstance(boxed(parameters, arguments, primitives));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+    }
+
+    private static final class ReflectiveInvoker extends CommandInvoker {
+
+        private final Object obj;
+        private final Method method;
+        private final Class<?>[] parameters;
+
+        ReflectiveInvoker(Object obj, Method method) {
+            this.obj = obj;
+            this.method = method;
+            this.parameters = method.getParameterTypes();
+        }
+
+        @Override
+        Object invoke(Object[] arguments, long[] primitives) throws Throwable {
+            try {
+                return method.invoke(obj, boxed(parameters, arguments, primitives));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,288 @@
+package be.rafvdl.commander;
+
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The resolved commands of a class, as found by scanning it through reflection.
+ *
+ * <p>A model holds everything the scan reads from the annotations, and the names of the methods
+ * it found, so that the commands can be rebuilt without walking the class again. It is what the
+ * {@link ModelCache} stores on disk.</p>
+ */
+final class CommandModel {
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{boolean.class, byte.class, short.class, char.class, int.class, long.class, float.class,
+                double.class}) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    final List<Node> roots = new ArrayList<Node>();
+
+    /**
+     * A command of the model, the equivalent of a class, a method or a field annotated with {@link Command}.
+     */
+    static final class Node {
+
+        boolean group;
+        String[] aliases;
+        String description;
+        String permission;
+        String declaringClass;
+        String method;
+        String field;
+        String[] parameterTypes;
+        List<CommandRegistrar.Parameter> parameters = new ArrayList<CommandRegistrar.Parameter>();
+        int[] throttleUses = new int[0];
+        long[] throttlePeriods = new long[0];
+        boolean async;
+        int concurrency;
+        long timeout;
+        String queued;
+        final List<Node> children = new ArrayList<Node>();
+
+    }
+
+    void write(DataOutput out) throws IOException {
+        writeNodes(out, roots);
+    }
+
+    static CommandModel read(DataInput in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        CommandModel model = new CommandModel();
+        readNodes(in, loader, model.roots);
+        return model;
+    }
+
+    /**
+     * Resolves a class by the name returned from {@link Class#getName()}, primitives included.
+     *
+     * @param name   The name
+     * @param loader The class loader
+     * @return The class
+     * @throws ClassNotFoundException If the class cannot be found
+     */
+    static Class<?> type(String name, ClassLoader loader) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVES.get(name);
+        return primitive != null ? primitive : Class.forName(name, false, loader);
+    }
+
+    /**
+     * Resolves the classes and methods a model refers to, looking every class up once rather than
+     * once per command.
+     */
+    static final class Resolver {
+
+        // Looking a method up searches the declared methods of its class, listing them copies every
+        // one of them; from this many lookups in one class on, listing them once is cheaper.
+        private static final int LIST_AFTER = 64;
+
+        private final ClassLoader loader;
+        private final Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+        private final Map<Class<?>, Integer> lookups = new HashMap<Class<?>, Integer>();
+        private final Map<Class<?>, Map<String, Method>> methods = new HashMap<Class<?>, Map<String, Method>>();
+
+        Resolver(ClassLoader loader) {
+            this.loader = loader;
+        }
+
+        Class<?> type(String name) throws ClassNotFoundException {
+            Class<?> type = types.get(name);
+            if (type == null) {
+                type = CommandModel.type(name, loader);
+                types.put(name, type);
+            }
+            return type;
+        }
+
+        /**
+         * Gets a method declared by a class, like {@link Class#getDeclaredMethod(String, Class[])}.
+         *
+         * <p>The first methods of a class are looked up by name and parameter types, which only
+         * copies the matching method. A class that commands are replayed from many methods of has
+         * its declared methods listed once instead.</p>
+         *
+         * @throws NoSuchMethodException If the class does not declare the method
+         */
+        Method method(Class<?> declaringClass, String name, Class<?>[] parameterTypes) throws NoSuchMethodException {
+            Map<String, Method> declared = methods.get(declaringClass);
+            if (declared == null) {
+                Integer count = lookups.get(declaringClass);
+                if (count == null || count < LIST_AFTER) {
+                    lookups.put(declaringClass, count == null ? 1 : count + 1);
+                    // Of a bridge method and the method it bridges to, this finds the latter.
+                    return declaringClass.getDeclaredMethod(name, parameterTypes);
+                }
+                declared = new HashMap<String, Method>();
+                for (Method method : declaringClass.getDeclaredMethods()) {
+                    String signature = signature(method.getName(), method.getParameterTypes());
+                    // A bridge method shares the signature of the method it bridges to.
+                    if (!method.isBridge() || !declared.containsKey(signature)) {
+                        declared.put(signature, method);
+                    }
+                }
+                methods.put(declaringClass, declared);
+            }
+            Method method = declared.get(signature(name, parameterTypes));
+            if (method == null) {
+                throw new NoSuchMethodException(declaringClass.getName() + '.' + name + Arrays.toString(parameterTypes));
+            }
+            return method;
+        }
+
+        private static String signature(String name, Class<?>[] parameterTypes) {
+            StringBuilder builder = new StringBuilder(name).append('(');
+            for (Class<?> type : parameterTypes) {
+                builder.append(type.getName()).append(',');
+            }
+            return builder.append(')').toString();
+        }
+
+    }
+
+    private static void writeNodes(DataOutput out, List<Node> nodes) throws IOException {
+        out.writeInt(nodes.size());
+        for (Node node : nodes) {
+            out.writeBoolean(node.group);
+            writeStrings(out, node.aliases);
+            out.writeUTF(node.description);
+            out.writeUTF(node.permission);
+            writeString(out, node.declaringClass);
+            writeString(out, node.method);
+            writeString(out, node.field);
+            writeStrings(out, node.parameterTypes);
+            out.writeInt(node.parameters.size());
+            for (CommandRegistrar.Parameter parameter : node.parameters) {
+                writeParameter(out, parameter);
+            }
+            out.writeInt(node.throttleUses.length);
+            for (int i = 0; i < node.throttleUses.length; i++) {
+                out.writeInt(node.throttleUses[i]);
+                out.writeLong(node.throttlePeriods[i]);
+            }
+            out.writeBoolean(node.async);
+            out.writeInt(node.concurrency);
+            out.writeLong(node.timeout);
+            writeString(out, node.queued);
+            writeNodes(out, node.children);
+        }
+    }
+
+    private static void readNodes(DataInput in, ClassLoader loader, List<Node> nodes) throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Node node = new Node();
+            node.group = in.readBoolean();
+            node.aliases = readStrings(in);
+            node.description = in.readUTF();
+            node.permission = in.readUTF();
+            node.declaringClass = readString(in);
+            node.method = readString(in);
+            node.field = readString(in);
+            node.parameterTypes = readStrings(in);
+            int parameters = in.readInt();
+            for (int j = 0; j < parameters; j++) {
+                node.parameters.add(readParameter(in, loader));
+            }
+            int throttles = in.readInt();
+            node.throttleUses = new int[throttles];
+            node.throttlePeriods = new long[throttles];
+            for (int j = 0; j < throttles; j++) {
+                node.throttleUses[j] = in.readInt();
+                node.throttlePeriods[j] = in.readLong();
+            }
+            node.async = in.readBoolean();
+            node.concurrency = in.readInt();
+            node.timeout = in.readLong();
+            node.queued = readString(in);
+            readNodes(in, loader, node.children);
+            nodes.add(node);
+        }
+    }
+
+    private static void writeParameter(DataOutput out, CommandRegistrar.Parameter parameter) throws IOException {
+        out.writeUTF(parameter.type.getName());
+        writeString(out, parameter.key);
+        out.writeBoolean(parameter.optional);
+        out.writeBoolean(parameter.weak);
+        writeString(out, parameter.choices);
+        out.writeBoolean(parameter.currentChoices);
+        out.writeBoolean(parameter.ignoreCase);
+        out.writeInt(parameter.limit);
+        writeStrings(out, parameter.literal);
+        out.writeBoolean(parameter.conjoin);
+        out.writeBoolean(parameter.flag);
+        writeString(out, parameter.permission);
+        out.writeDouble(parameter.min);
+        out.writeDouble(parameter.max);
+        writeString(out, parameter.all != null ? parameter.all.getName() : null);
+        out.writeInt(parameter.allLimit);
+    }
+
+    private static CommandRegistrar.Parameter readParameter(DataInput in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        CommandRegistrar.Parameter parameter = CommandRegistrar.Parameter.of(type(in.readUTF(), loader));
+        parameter.key = readString(in);
+        parameter.optional = in.readBoolean();
+        parameter.weak = in.readBoolean();
+        parameter.choices = readString(in);
+        parameter.currentChoices = in.readBoolean();
+        parameter.ignoreCase = in.readBoolean();
+        parameter.limit = in.readInt();
+        parameter.literal = readStrings(in);
+        parameter.conjoin = in.readBoolean();
+        parameter.flag = in.readBoolean();
+        parameter.permission = readString(in);
+        parameter.min = in.readDouble();
+        parameter.max = in.readDouble();
+        String all = readString(in);
+        parameter.all = all != null ? type(all, loader) : null;
+        parameter.allLimit = in.readInt();
+        return parameter;
+    }
+
+    private static void writeString(DataOutput out, @Nullable String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeStrings(DataOutput out, @Nullable String[] strings) throws IOException {
+        out.writeInt(strings != null ? strings.length : -1);
+        if (strings != null) {
+            for (String string : strings) {
+                out.writeUTF(string);
+            }
+        }
+    }
+
+    @Nullable
+    private static String[] readStrings(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        String[] strings = new String[length];
+        for (int i = 0; i < length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+}
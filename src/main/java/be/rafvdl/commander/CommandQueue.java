@@ -0,0 +1,232 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.Game;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.text.Text;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The queue of invocations of {@link Queued} commands, which is drained on the main thread every
+ * tick within a time budget.
+ *
+ * <p>Every priority has its own queue. A tick runs the invocations of the highest priority first,
+ * and stops as soon as the budget is spent; the remaining invocations wait for the next tick. At
+ * least one invocation runs every tick, so a budget that is too small still makes progress. The
+ * queues together hold at most the capacity, beyond which commands are rejected.</p>
+ */
+public final class CommandQueue {
+
+    private static final long DEFAULT_BUDGET = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private final Object plugin;
+    private final Game game;
+    private final ConcurrentLinkedQueue<Entry>[] queues;
+    private final AtomicIntegerArray depths;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final LatencyHistogram waits = new LatencyHistogram();
+    private final LongAdder overruns = new LongAdder();
+    private volatile long budget = DEFAULT_BUDGET;
+    private volatile int capacity = DEFAULT_CAPACITY;
+
+    CommandQueue(Object plugin, Game game) {
+        this.plugin = plugin;
+        this.game = game;
+        Queued.Priority[] priorities = Queued.Priority.values();
+        // An array of a generic type can only be created with a wildcard, every element is set below.
+        @SuppressWarnings("unchecked")
+        ConcurrentLinkedQueue<Entry>[] queues = (ConcurrentLinkedQueue<Entry>[]) new ConcurrentLinkedQueue<?>[priorities.length];
+        this.queues = queues;
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<Entry>();
+        }
+        this.depths = new AtomicIntegerArray(priorities.length);
+    }
+
+    void setBudget(long budget) {
+        checkArgument(budget > 0, "budget must be positive");
+        this.budget = budget;
+    }
+
+    void setCapacity(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the maximum number of waiting invocations.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the time the queue may spend running invocations per tick.
+     *
+     * @return The budget in nanoseconds
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Gets the number of waiting invocations.
+     *
+     * @return The depth
+     */
+    public int getDepth() {
+        return size.get();
+    }
+
+    /**
+     * Gets the number of waiting invocations of a priority.
+     *
+     * @param priority The priority
+     * @return The depth
+     */
+    public int getDepth(Queued.Priority priority) {
+        return depths.get(priority.ordinal());
+    }
+
+    /**
+     * Gets the number of invocations taken from the queue and run.
+     *
+     * @return The number of invocations
+     */
+    public long getExecutions() {
+        return waits.count();
+    }
+
+    /**
+     * Gets the number of ticks that spent their budget and left invocations for the next tick.
+     *
+     * @return The number of ticks
+     */
+    public long getOverruns() {
+        return overruns.sum();
+    }
+
+    /**
+     * Gets the time below which the given percentage of invocations waited in the queue.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The time in nanoseconds
+     */
+    public long getWait(double percentile) {
+        return waits.percentile(percentile);
+    }
+
+    /**
+     * Gets the mean time invocations waited in the queue.
+     *
+     * @return The time in nanoseconds
+     */
+    public double getMeanWait() {
+        return waits.mean();
+    }
+
+    /**
+     * Gets the longest time an invocation waited in the queue.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getMaxWait() {
+        return waits.max();
+    }
+
+    /**
+     * Clears the statistics of the queue.
+     */
+    public void reset() {
+        waits.reset();
+        overruns.reset();
+    }
+
+    /**
+     * Adds an invocation to the queue of its priority.
+     *
+     * @param entry The invocation
+     * @throws CommandException If the queue is full
+     */
+    void offer(Entry entry) throws CommandException {
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                throw new CommandException(Text.of("The server is too busy to run this command, try again later."));
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        if (started.compareAndSet(false, true)) {
+            game.getScheduler().createTaskBuilder().intervalTicks(1).execute(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }).submit(plugin);
+        }
+        depths.incrementAndGet(entry.priority.ordinal());
+        queues[entry.priority.ordinal()].add(entry);
+    }
+
+    private void drain() {
+        long deadline = System.nanoTime() + budget;
+        boolean first = true;
+        for (int i = 0; i < queues.length; i++) {
+            Entry entry;
+            while ((first || System.nanoTime() - deadline < 0) && (entry = queues[i].poll()) != null) {
+                first = false;
+                depths.decrementAndGet(i);
+                size.decrementAndGet();
+                waits.record(System.nanoTime() - entry.enqueued);
+                try {
+                    entry.run();
+                } catch (AllElement.ParseFailure e) {
+                    if (e.exception.getText() != null) {
+                        entry.source.sendMessage(e.exception.getText());
+                    }
+                } catch (CommandException e) {
+                    if (e.getText() != null) {
+                        entry.source.sendMessage(e.getText());
+                    }
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                    entry.source.sendMessage(Text.of("An error occurred while running this command."));
+                }
+            }
+        }
+        if (getDepth() > 0) {
+            overruns.increment();
+        }
+    }
+
+    /**
+     * A parsed invocation waiting in the queue.
+     */
+    abstract static class Entry {
+
+        private final CommandSource source;
+        private final Queued.Priority priority;
+        private final long enqueued = System.nanoTime();
+
+        Entry(CommandSource source, Queued.Priority priority) {
+            this.source = source;
+            this.priority = priority;
+        }
+
+        abstract void run() throws CommandException;
+
+    }
+
+}
@@ -0,0 +1,248 @@
+package be.rafvdl.commander;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Registers the commands of a class without scanning it through reflection.
+ *
+ * <p>Implementations are generated at compile time by the {@code commander-processor} annotation
+ * processor and named after the class they describe, followed by {@code $$CommanderRegistrar}.
+ * {@link Commander#register(Object)} uses the generated registrar of a class when it is present
+ * and falls back to reflection otherwise.</p>
+ *
+ * @param <T> The type of the registered object
+ */
+public interface CommandRegistrar<T> {
+
+    /**
+     * The suffix of the name of a generated registrar.
+     */
+    String SUFFIX = "$$CommanderRegistrar";
+
+    /**
+     * Describes the commands of the given object.
+     *
+     * @param obj  The object
+     * @param root The tree to add the commands to
+     */
+    void register(T obj, Tree root);
+
+    /**
+     * A level of the command tree.
+     */
+    interface Tree {
+
+        /**
+         * Adds a command with child commands, the equivalent of a class annotated with {@link Command}.
+         *
+         * @param aliases     The aliases
+         * @param description The description
+         * @param permission  The permission, or an empty string
+         * @param parent      The invoker of the {@link Command.Parent} method, or null
+         * @param parameters  The parameters of the {@link Command.Parent} method
+         * @return The tree of the new command
+         */
+        Tree group(String[] aliases, String description, String permission, @Nullable Invoker parent, Parameter... parameters);
+
+        /**
+         * Adds a command, the equivalent of a method annotated with {@link Command}.
+         *
+         * @param aliases     The aliases
+         * @param description The description
+         * @param permission  The permission, or an empty string
+         * @param invoker     The invoker of the method
+         * @param parameters  The parameters of the method, without the leading {@code CommandSource}
+         * @return The options of the new command
+         */
+        Options command(String[] aliases, String description, String permission, Invoker invoker, Parameter... parameters);
+
+        /**
+         * Adds a command, the equivalent of a field annotated with {@link Command} and
+         * {@link ConstructorCommand}.
+         *
+         * @param aliases     The aliases
+         * @param description The description
+         * @param permission  The permission, or an empty string
+         * @param listener    The value of the field
+         * @param constructor The invoker of the constructor, returning the new instance
+         * @param reset       The invoker of the reset method, or null
+         * @param poolSize    The maximum number of idle instances per thread
+         * @param parameters  The parameters of the constructor, without the leading {@code CommandSource}
+         */
+        void constructor(String[] aliases, String description, String permission, ConstructorCommandListener<?> listener, Invoker constructor,
+                @Nullable Resetter reset, int poolSize, Parameter... parameters);
+
+    }
+
+    /**
+     * The method level annotations of a command, other than {@link Command} and {@link Permission}.
+     */
+    interface Options {
+
+        /**
+         * The equivalent of {@link Cooldown}.
+         *
+         * @param cooldown The cooldown
+         * @param unit     The unit of the cooldown
+         * @return These options
+         */
+        Options cooldown(long cooldown, TimeUnit unit);
+
+        /**
+         * The equivalent of {@link RateLimit}.
+         *
+         * @param uses The number of uses per period
+         * @param per  The period
+         * @param unit The unit of the period
+         * @return These options
+         */
+        Options rateLimit(int uses, long per, TimeUnit unit);
+
+        /**
+         * The equivalent of {@link Async}.
+         *
+         * @param concurrency The maximum number of concurrent executions, or 0
+         * @param timeout     The timeout in milliseconds, or 0
+         * @return These options
+         */
+        Options async(int concurrency, long timeout);
+
+        /**
+         * The equivalent of {@link Queued}.
+         *
+         * @param priority The priority
+         * @return These options
+         */
+        Options queued(Queued.Priority priority);
+
+    }
+
+    /**
+     * Calls a command method directly.
+     */
+    interface Invoker {
+
+        /**
+         * Invokes the method.
+         *
+         * @param arguments  The arguments, including the leading {@code CommandSource}, except
+         *                   those of numeric primitive parameters
+         * @param primitives The numeric primitive arguments at the same indices, never boxed:
+         *                   integers as their value, a {@code double} as its raw long bits and a
+         *                   {@code float} as its raw int bits
+         * @return The return value of the method
+         * @throws Throwable Anything thrown by the method itself
+         */
+        Object invoke(Object[] arguments, long[] primitives) throws Throwable;
+
+    }
+
+    /**
+     * Calls the reset method of a {@link ConstructorCommand} directly.
+     */
+    interface Resetter {
+
+        /**
+         * Reinitializes a pooled instance.
+         *
+         * @param instance   The instance
+         * @param arguments  The arguments, including the leading {@code CommandSource}, except
+         *                   those of numeric primitive parameters
+         * @param primitives The raw bits of the numeric primitive arguments, at the same indices
+         * @throws Throwable Anything thrown by the method itself
+         */
+        void reset(Object instance, Object[] arguments, long[] primitives) throws Throwable;
+
+    }
+
+    /**
+     * A command parameter and the argument annotations that were present on it.
+     */
+    final class Parameter {
+
+        final Class<?> type;
+        String key;
+        boolean optional = false;
+        boolean weak = false;
+        String choices;
+        boolean currentChoices = false;
+        boolean ignoreCase = false;
+        int limit = 0;
+        String[] literal;
+        boolean conjoin = false;
+        boolean flag = false;
+        String permission;
+        double min = Double.NEGATIVE_INFINITY;
+        double max = Double.POSITIVE_INFINITY;
+        Class<?> all;
+        int allLimit = 0;
+
+        private Parameter(Class<?> type) {
+            this.type = checkNotNull(type);
+        }
+
+        public static Parameter of(Class<?> type) {
+            return new Parameter(type);
+        }
+
+        public Parameter key(String key) {
+            this.key = checkNotNull(key);
+            return this;
+        }
+
+        public Parameter optional(boolean weak) {
+            this.optional = true;
+            this.weak = weak;
+            return this;
+        }
+
+        public Parameter choices(String id, boolean current, boolean ignoreCase, int limit) {
+            this.choices = checkNotNull(id);
+            this.currentChoices = current;
+            this.ignoreCase = ignoreCase;
+            this.limit = limit;
+            return this;
+        }
+
+        public Parameter literal(String... values) {
+            this.literal = checkNotNull(values);
+            return this;
+        }
+
+        public Parameter conjoin() {
+            this.conjoin = true;
+            return this;
+        }
+
+        public Parameter flag() {
+            this.flag = true;
+            return this;
+        }
+
+        public Parameter permission(String permission) {
+            this.permission = checkNotNull(permission);
+            return this;
+        }
+
+        public Parameter range(double min, double max) {
+            this.min = min;
+            this.max = max;
+            return this;
+        }
+
+        public Parameter all(Class<?> type, int limit) {
+            this.all = checkNotNull(type);
+            this.allLimit = limit;
+            return this;
+        }
+
+        boolean hasRange() {
+            return min != Double.NEGATIVE_INFINITY || max != Double.POSITIVE_INFINITY;
+        }
+
+    }
+
+}
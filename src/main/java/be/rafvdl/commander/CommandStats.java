@@ -0,0 +1,104 @@
+package be.rafvdl.commander;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics of a registered command, collected when {@link Commander#setStatsEnabled(boolean)}
+ * was enabled before the command was registered.
+ *
+ * <p>Invocations and latencies include the time spent parsing the arguments, and for commands with
+ * child commands also the time spent in those children.</p>
+ */
+public final class CommandStats {
+
+    private final String path;
+    private final String permission;
+    private final LongAdder parseFailures = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    CommandStats(String path, String permission) {
+        this.path = path;
+        this.permission = permission;
+    }
+
+    /**
+     * Gets the aliases of the command and its parents, separated by spaces.
+     *
+     * @return The path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the permission node of the command.
+     *
+     * @return The permission
+     */
+    public String getPermission() {
+        return permission;
+    }
+
+    public long getInvocations() {
+        return latencies.count();
+    }
+
+    public long getParseFailures() {
+        return parseFailures.sum();
+    }
+
+    public long getExceptions() {
+        return exceptions.sum();
+    }
+
+    /**
+     * Gets the latency below which the given percentage of invocations finished.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The latency in nanoseconds
+     */
+    public long getLatency(double percentile) {
+        return latencies.percentile(percentile);
+    }
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return The latency in nanoseconds
+     */
+    public double getMeanLatency() {
+        return latencies.mean();
+    }
+
+    /**
+     * Gets the highest latency.
+     *
+     * @return The latency in nanoseconds
+     */
+    public long getMaxLatency() {
+        return latencies.max();
+    }
+
+    /**
+     * Clears all statistics of the command.
+     */
+    public void reset() {
+        parseFailures.reset();
+        exceptions.reset();
+        latencies.reset();
+    }
+
+    void record(long nanos) {
+        latencies.record(nanos);
+    }
+
+    void parseFailure() {
+        parseFailures.increment();
+    }
+
+    void exception() {
+        exceptions.increment();
+    }
+
+}
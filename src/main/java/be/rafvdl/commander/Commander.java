@@ -7,26 +7,51 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ObjectArrays;
 import org.spongepowered.api.CatalogType;
 import org.spongepowered.api.Game;
+import org.spongepowered.api.command.CommandCallable;
 import org.spongepowered.api.command.CommandException;
-import org.spongepowered.api.command.CommandMessageFormatting;
+import org.spongepowered.api.command.CommandMapping;
+import org.spongepowered.api.command.CommandPermissionException;
 import org.spongepowered.api.command.CommandResult;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.command.args.*;
+import org.spongepowered.api.command.args.parsing.InputTokenizer;
 import org.spongepowered.api.command.spec.CommandExecutor;
 import org.spongepowered.api.command.spec.CommandSpec;
 import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.service.permission.Subject;
 import org.spongepowered.api.text.Text;
-import org.spongepowered.api.util.GuavaCollectors;
-import org.spongepowered.api.util.StartsWithPredicate;
 import org.spongepowered.api.world.Location;
 import org.spongepowered.api.world.World;
 
 import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UTFDataFormatException;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.spongepowered.api.util.SpongeApiTranslationHelper.t;
@@ -40,14 +65,42 @@ public class Commander {
     public static final byte FIELDS = 0x02;
     public static final byte CLASSES = 0x04;
 
+    private static final int SCRIPT_BATCH = 1024;
+
     private Object plugin;
     private Game game;
-
-    private Map<String, Object> dependencies = new HashMap<String, Object>();
+    private AsyncDispatcher asyncDispatcher;
+    private CommandQueue commandQueue;
+
+    // Written under the lock of choiceIndexes, so a dependency and its indexes change together.
+    private Map<String, Object> dependencies = new ConcurrentHashMap<String, Object>();
+    private Map<String, ChoiceIndex> choiceIndexes = new HashMap<String, ChoiceIndex>();
+    private volatile boolean statsEnabled = false;
+    private volatile boolean compiledParsing = false;
+    private List<CommandStats> stats = new CopyOnWriteArrayList<CommandStats>();
+    private volatile ModelCache modelCache;
+    private volatile PermissionCache permissionCache;
+    private List<Root> roots = new CopyOnWriteArrayList<Root>();
+    private volatile TrafficRecorder trafficRecorder;
+    private final HelpIndex helpIndex = new HelpIndex() {
+        @Override
+        List<Line> lines() {
+            return helpLines();
+        }
+    };
+    private final AtomicBoolean modelCacheSavePending = new AtomicBoolean();
+    private final Executor choiceLoader = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            game.getScheduler().createTaskBuilder().async().execute(command).submit(plugin);
+        }
+    };
 
     public Commander(Object plugin, Game game) {
         this.plugin = checkNotNull(plugin);
         this.game = checkNotNull(game);
+        this.asyncDispatcher = new AsyncDispatcher(plugin, game);
+        this.commandQueue = new CommandQueue(plugin, game);
 
         if (getClass().getPackage().getName().equalsIgnoreCase("be.rafvdl.commander")) {
             System.err.println("COMMANDER IS RUNNING FROM THE DEFAULT PACKAGE.");
@@ -55,8 +108,325 @@ public class Commander {
         }
     }
 
+    /**
+     * Adds or replaces a dependency. This may be called from any thread.
+     *
+     * <p>The dependency of {@link Choices} is either a map or a {@link ChoiceProvider}.</p>
+     *
+     * @param id         The ID of the dependency
+     * @param dependency The dependency
+     */
     public void addDependency(String id, Object dependency) {
-        dependencies.put(id, checkNotNull(dependency));
+        checkNotNull(dependency);
+        synchronized (choiceIndexes) {
+            dependencies.put(id, dependency);
+            for (boolean ignoreCase : new boolean[]{false, true}) {
+                ChoiceIndex index = choiceIndexes.get(choiceIndexKey(id, ignoreCase));
+                if (index != null) {
+                    index.source(dependency);
+                }
+            }
+        }
+        helpIndex.invalidate();
+    }
+
+    /**
+     * Publishes the changes made to the map of a {@link Choices} dependency. This may be called from
+     * any thread.
+     *
+     * <p>Current choices are parsed and completed from a copy of the map, so changes to it are only
+     * seen after this call. For a {@link ChoiceProvider}, this reloads the choices even if its
+     * version did not change.</p>
+     *
+     * @param id   The ID of the dependency
+     * @param keys The keys that were added, replaced or removed, or none if the whole map changed
+     */
+    public void updateChoices(String id, String... keys) {
+        synchronized (choiceIndexes) {
+            Object dependency = dependencies.get(id);
+            checkNotNull(dependency, "Unknown dependency " + id);
+            for (boolean ignoreCase : new boolean[]{false, true}) {
+                ChoiceIndex index = choiceIndexes.get(choiceIndexKey(id, ignoreCase));
+                if (index == null) {
+                    continue;
+                }
+                if (dependency instanceof ChoiceProvider) {
+                    index.invalidate();
+                    continue;
+                }
+                Map<String, ?> choices = (Map<String, ?>) dependency;
+                if (keys.length == 0) {
+                    index.rebuild(choices);
+                } else {
+                    index.update(choices, keys);
+                }
+            }
+        }
+        helpIndex.invalidate();
+    }
+
+    private ChoiceIndex choiceIndex(String id, boolean ignoreCase) {
+        String key = choiceIndexKey(id, ignoreCase);
+        synchronized (choiceIndexes) {
+            ChoiceIndex index = choiceIndexes.get(key);
+            if (index == null) {
+                Object choices = dependencies.get(id);
+                checkNotNull(choices, "Unknown dependency " + id);
+                index = new ChoiceIndex(choices, ignoreCase, choiceLoader);
+                choiceIndexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    private static String choiceIndexKey(String id, boolean ignoreCase) {
+        return (ignoreCase ? "i:" : "s:") + id;
+    }
+
+    /**
+     * Sets the executor on which {@link Async} commands run.
+     *
+     * <p>By default a bounded pool with a thread per processor is used.</p>
+     *
+     * @param executor The executor
+     */
+    public void setAsyncExecutor(ExecutorService executor) {
+        asyncDispatcher.setExecutor(executor);
+    }
+
+    /**
+     * Sets the time the {@link CommandQueue} may spend running {@link Queued} commands per tick.
+     *
+     * <p>The default is 5 milliseconds.</p>
+     *
+     * @param budget The budget
+     * @param unit   The unit of the budget
+     */
+    public void setQueueBudget(long budget, TimeUnit unit) {
+        commandQueue.setBudget(unit.toNanos(budget));
+    }
+
+    /**
+     * Sets the number of {@link Queued} commands that may wait in the {@link CommandQueue}, beyond
+     * which they are rejected.
+     *
+     * <p>The default is 4096.</p>
+     *
+     * @param capacity The capacity
+     */
+    public void setQueueCapacity(int capacity) {
+        commandQueue.setCapacity(capacity);
+    }
+
+    /**
+     * Gets the queue of {@link Queued} commands, with its depth and wait times.
+     *
+     * @return The queue
+     */
+    public CommandQueue getCommandQueue() {
+        return commandQueue;
+    }
+
+    /**
+     * Starts appending every command run through this Commander to a {@link TrafficLog}, with its
+     * source type, alias path, arguments, time and latency. Recording stops the previous recorder.
+     *
+     * <p>The log is written from a separate thread. Commands are left out of the log rather than
+     * waiting for it when it falls behind.</p>
+     *
+     * @param file The file of the log, which is created or appended to
+     * @return The recorder
+     * @throws IOException If the file cannot be opened
+     */
+    public synchronized TrafficRecorder recordTraffic(Path file) throws IOException {
+        checkNotNull(file);
+        TrafficRecorder recorder = new TrafficRecorder(file, TrafficRecorder.DEFAULT_CAPACITY) {
+            @Override
+            int resolve(Object root, String arguments, List<String> path) {
+                return Commander.resolve((CommandTree) root, arguments, path);
+            }
+        };
+        TrafficRecorder previous = trafficRecorder;
+        trafficRecorder = recorder;
+        if (previous != null) {
+            previous.close();
+        }
+        return recorder;
+    }
+
+    /**
+     * Stops recording commands, and returns once the log is written and closed.
+     */
+    public synchronized void stopRecordingTraffic() {
+        TrafficRecorder recorder = trafficRecorder;
+        trafficRecorder = null;
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    /**
+     * Caches the permission decisions of command sources for commands registered from now on.
+     *
+     * <p>Both the permissions of commands and those of {@link Permission} parameters are cached.
+     * A decision is kept for at most the given time, and the least recently used decisions are
+     * dropped once the cache is full.</p>
+     *
+     * <p>Sponge API 3.1 has no event for a change of the permissions of a subject, so the cache
+     * cannot notice one itself. Until the decision expires, a change only takes effect once
+     * {@link #invalidatePermissions(Subject)} or {@link #invalidatePermissions()} is called, for
+     * example from the change hook of the permission plugin.</p>
+     *
+     * @param maximumSize The maximum number of cached decisions
+     * @param ttl         The time to keep a decision
+     * @param unit        The unit of the time
+     */
+    public void enablePermissionCache(int maximumSize, long ttl, TimeUnit unit) {
+        this.permissionCache = new PermissionCache(maximumSize, unit.toNanos(ttl));
+    }
+
+    /**
+     * Forgets the cached permission decisions of a subject.
+     *
+     * @param subject The subject
+     */
+    public void invalidatePermissions(Subject subject) {
+        if (permissionCache != null) {
+            permissionCache.invalidate(checkNotNull(subject));
+        }
+    }
+
+    /**
+     * Forgets all cached permission decisions.
+     */
+    public void invalidatePermissions() {
+        if (permissionCache != null) {
+            permissionCache.invalidate();
+        }
+    }
+
+    /**
+     * Sets whether commands registered from now on parse their arguments with Commander's compiled
+     * parser instead of Sponge's argument elements.
+     *
+     * <p>The compiled parser reads the input in a single pass and parses the common parameter types
+     * itself. Any other parameter is still handed to its Sponge element. Child commands and tab
+     * completion always go through Sponge.</p>
+     *
+     * @param compiledParsing Whether to use the compiled parser
+     */
+    public void setCompiledParsing(boolean compiledParsing) {
+        this.compiledParsing = compiledParsing;
+    }
+
+    /**
+     * Sets whether {@link CommandStats} are collected for commands registered from now on.
+     *
+     * <p>Commands registered while this is disabled are not instrumented at all.</p>
+     *
+     * @param statsEnabled Whether to collect statistics
+     */
+    public void setStatsEnabled(boolean statsEnabled) {
+        this.statsEnabled = statsEnabled;
+    }
+
+    /**
+     * Gets the statistics of all instrumented commands.
+     *
+     * @return The statistics
+     */
+    public List<CommandStats> getStats() {
+        return Collections.unmodifiableList(new ArrayList<CommandStats>(stats));
+    }
+
+    /**
+     * Registers a command that shows the most used instrumented commands and their latencies.
+     *
+     * @param permission The permission of the command
+     * @param aliases    The aliases of the command
+     */
+    public void registerStatsCommand(String permission, String... aliases) {
+        CommandSpec spec = CommandSpec.builder()
+                .permission(permission)
+                .description(Text.of("Shows the statistics of the commands."))
+                .executor(new CommandExecutor() {
+                    @Override
+                    public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+                        List<CommandStats> sorted = new ArrayList<CommandStats>(stats);
+                        Collections.sort(sorted, new Comparator<CommandStats>() {
+                            @Override
+                            public int compare(CommandStats o1, CommandStats o2) {
+                                return Long.compare(o2.getInvocations(), o1.getInvocations());
+                            }
+                        });
+                        if (sorted.isEmpty()) {
+                            src.sendMessage(Text.of("No command statistics were collected."));
+                        }
+                        for (CommandStats commandStats : sorted.subList(0, Math.min(10, sorted.size()))) {
+                            src.sendMessage(Text.of(String.format("/%s: %d calls, p50 %.3f ms, p99 %.3f ms, max %.3f ms, %d parse failures, %d exceptions",
+                                    commandStats.getPath(), commandStats.getInvocations(), commandStats.getLatency(50) / 1e6,
+                                    commandStats.getLatency(99) / 1e6, commandStats.getMaxLatency() / 1e6, commandStats.getParseFailures(),
+                                    commandStats.getExceptions())));
+                        }
+                        return CommandResult.success();
+                    }
+                })
+                .build();
+        game.getCommandManager().register(plugin, spec, aliases);
+    }
+
+    /**
+     * Caches the scanned commands of every registered class in the config directory of the plugin.
+     *
+     * @see #enableModelCache(Path)
+     */
+    public void enableModelCache() {
+        enableModelCache(game.getConfigManager().getPluginConfig(plugin).getDirectory().resolve("commander-models.bin"));
+    }
+
+    /**
+     * Caches the scanned commands of every registered class in the given file.
+     *
+     * <p>Classes registered from now on are only scanned through reflection when their bytecode
+     * changed since the cache was written. The file is updated in the background after a class was
+     * scanned. Classes with a generated {@link CommandRegistrar} are not cached, they are never
+     * scanned.</p>
+     *
+     * @param file The file
+     */
+    public void enableModelCache(Path file) {
+        this.modelCache = new ModelCache(checkNotNull(file));
+    }
+
+    /**
+     * Registers a command that lists the commands of this Commander which the source can use, with
+     * their usage and description.
+     *
+     * <p>The pages are rendered once and kept until commands are registered or a {@link Choices}
+     * dependency changes.</p>
+     *
+     * @param permission The permission of the command
+     * @param aliases    The aliases of the command
+     */
+    public void registerHelpCommand(String permission, String... aliases) {
+        CommandSpec spec = CommandSpec.builder()
+                .permission(permission)
+                .description(Text.of("Shows the available commands."))
+                .arguments(GenericArguments.optional(GenericArguments.integer(Text.of("page"))))
+                .executor(new CommandExecutor() {
+                    @Override
+                    public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+                        int page = args.<Integer>getOne("page").orElse(1);
+                        Text text = helpIndex.page(src, page);
+                        if (text == null) {
+                            throw new CommandException(Text.of("There are only " + helpIndex.pageCount(src) + " pages."));
+                        }
+                        src.sendMessage(text);
+                        return CommandResult.success();
+                    }
+                })
+                .build();
+        game.getCommandManager().register(plugin, spec, aliases);
     }
 
     /**
@@ -71,21 +441,519 @@ public class Commander {
     /**
      * Registers all available (child)commands in a given object.
      *
+     * <p>If a {@link CommandRegistrar} was generated for the class of the object, it is used instead
+     * of scanning the class through reflection.</p>
+     *
      * @param obj   The object
      * @param flags The flags
      */
     public void register(Object obj, int flags) {
         checkNotNull(obj);
-        Collection<CommandTree> trees = registerClass(null, obj, obj.getClass(), flags);
-        if (trees != null) {
+        for (CommandTree tree : analyze(obj, flags)) {
+            register(tree, obj.getClass().getName());
+        }
+    }
+
+    /**
+     * Unregisters all commands that were registered from an object of the same class as the given
+     * object.
+     *
+     * @param obj The object
+     */
+    public void unregister(Object obj) {
+        checkNotNull(obj);
+        String owner = obj.getClass().getName();
+        for (Root root : roots) {
+            if (root.owner.equals(owner)) {
+                unregister(root, null);
+            }
+        }
+        helpIndex.invalidate();
+    }
+
+    /**
+     * Replaces the commands that were registered from an object of the same class as the given
+     * object with the commands in the given object.
+     *
+     * @param obj The object
+     * @see #reload(Object, int)
+     */
+    public void reload(Object obj) {
+        reload(obj, METHODS | FIELDS | CLASSES);
+    }
+
+    /**
+     * Replaces the commands that were registered from an object of the same class as the given
+     * object with the commands in the given object.
+     *
+     * <p>The class is scanned again and the new commands are compared with the registered ones. A
+     * command that did not change keeps its {@link CommandSpec}, its throttles and its statistics,
+     * and is only bound to the new object; a command that changed is rebuilt together with its
+     * parents. A root command is only registered again if it or one of its children changed.</p>
+     *
+     * @param obj   The object
+     * @param flags The flags
+     */
+    public void reload(Object obj, int flags) {
+        checkNotNull(obj);
+        String owner = obj.getClass().getName();
+        Map<String, Root> old = new HashMap<String, Root>();
+        for (Root root : roots) {
+            if (root.owner.equals(owner)) {
+                old.put(root.tree.aliases[0], root);
+            }
+        }
+        for (CommandTree tree : analyze(obj, flags)) {
+            Root root = old.remove(tree.aliases[0]);
+            if (root == null) {
+                register(tree, owner);
+                continue;
+            }
+            CommandTree merged = merge(root.tree, tree);
+            if (merged != root.tree) {
+                unregister(root, merged);
+                register(merged, owner);
+            }
+        }
+        for (Root root : old.values()) {
+            unregister(root, null);
+        }
+        helpIndex.invalidate();
+    }
+
+    /**
+     * Registers all available (child)commands in the given objects.
+     *
+     * @param objects The objects
+     * @see #registerAll(Collection, int)
+     */
+    public void registerAll(Collection<?> objects) {
+        registerAll(objects, METHODS | FIELDS | CLASSES);
+    }
+
+    /**
+     * Registers all available (child)commands in the given objects.
+     *
+     * <p>The classes of the objects are scanned in parallel on the common fork-join pool, after
+     * which all commands are registered on the calling thread, in the order of the objects. This
+     * should be called from the main thread. If any class is invalid, no command is registered.</p>
+     *
+     * @param objects The objects
+     * @param flags   The flags
+     */
+    public void registerAll(Collection<?> objects, final int flags) {
+        List<Callable<Collection<CommandTree>>> tasks = new ArrayList<Callable<Collection<CommandTree>>>(objects.size());
+        for (final Object obj : objects) {
+            checkNotNull(obj);
+            tasks.add(new Callable<Collection<CommandTree>>() {
+                @Override
+                public Collection<CommandTree> call() throws Exception {
+                    return analyze(obj, flags);
+                }
+            });
+        }
+        List<Object> owners = new ArrayList<Object>(objects);
+        List<Collection<CommandTree>> results = new ArrayList<Collection<CommandTree>>(tasks.size());
+        try {
+            for (Future<Collection<CommandTree>> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning commands", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        for (int i = 0; i < results.size(); i++) {
+            for (CommandTree tree : results.get(i)) {
+                register(tree, owners.get(i).getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * Runs a script of commands registered through this Commander, one command per line.
+     *
+     * @param src    The source to run the commands as
+     * @param script The script
+     * @return The result of the script
+     * @throws IOException If the script cannot be read
+     * @see #runScript(CommandSource, InputStream)
+     */
+    public ScriptResult runScript(CommandSource src, Path script) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+            return runScript(src, reader);
+        }
+    }
+
+    /**
+     * Runs a script of commands registered through this Commander, one command per line.
+     *
+     * <p>Blank lines and lines starting with {@code #} are skipped, and a leading slash is
+     * optional. Every line is resolved straight against the registered command trees and bound by
+     * the same argument plan as the command's executor, without going through the command
+     * manager. The lines are parsed and run in batches: all arguments of a batch are parsed before
+     * its first command runs. Cooldowns and rate limits do not apply. Errors are collected in the
+     * result instead of being sent to the source, except for {@link Async} and {@link Queued}
+     * commands, which report their errors as usual. This should be called from the main
+     * thread.</p>
+     *
+     * @param src    The source to run the commands as
+     * @param script The script, which is not closed
+     * @return The result of the script
+     * @throws IOException If the script cannot be read
+     */
+    public ScriptResult runScript(CommandSource src, InputStream script) throws IOException {
+        return runScript(src, new BufferedReader(new InputStreamReader(script, StandardCharsets.UTF_8)));
+    }
+
+    private ScriptResult runScript(CommandSource src, BufferedReader reader) throws IOException {
+        checkNotNull(src);
+        Map<String, CommandTree> aliases = new HashMap<String, CommandTree>();
+        for (Root root : roots) {
+            for (String alias : root.tree.aliases) {
+                aliases.put(alias.toLowerCase(), root.tree);
+            }
+        }
+        ScriptResult result = new ScriptResult();
+        List<Invocation> batch = new ArrayList<Invocation>(SCRIPT_BATCH);
+        int number = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            result.command();
+            Invocation invocation = prepare(src, aliases, line, number, result);
+            if (invocation != null) {
+                batch.add(invocation);
+                if (batch.size() == SCRIPT_BATCH) {
+                    run(src, batch, result);
+                    batch.clear();
+                }
+            }
+        }
+        run(src, batch, result);
+        result.finish();
+        return result;
+    }
+
+    /**
+     * Resolves and parses a line of a script.
+     *
+     * @return The invocation, or null if the line failed
+     */
+    @Nullable
+    private Invocation prepare(CommandSource src, Map<String, CommandTree> aliases, String line, int number, ScriptResult result) {
+        String input = line.charAt(0) == '/' ? line.substring(1) : line;
+        int end = tokenEnd(input, 0);
+        CommandTree tree = aliases.get(input.substring(0, end).toLowerCase());
+        if (tree == null) {
+            result.failure(number, line, "Unknown command");
+            return null;
+        }
+        int start = tokenStart(input, end);
+        List<CommandTree> path = new ArrayList<CommandTree>();
+        path.add(tree);
+        while (start < input.length()) {
+            end = tokenEnd(input, start);
+            CommandTree child = tree.index().get(input, start, end);
+            if (child == null) {
+                break;
+            }
+            tree = child;
+            path.add(tree);
+            start = tokenStart(input, end);
+        }
+        MethodCommandTree method = (MethodCommandTree) tree;
+        if (method.invoker == null) {
+            result.failure(number, line, "Unknown subcommand");
+            return null;
+        }
+        for (CommandTree element : path) {
+            String permission = element.permission();
+            if (!permission.isEmpty()
+                    && !(element.permissions != null ? element.permissions.hasPermission(src, permission) : src.hasPermission(permission))) {
+                result.failure(number, line, "You do not have permission to use this command!");
+                return null;
+            }
+        }
+        String arguments = input.substring(start);
+        try {
+            CommandArgs args = new CommandArgs(arguments, InputTokenizer.quotedStrings(false).tokenize(arguments, false));
+            CommandContext context = new CommandContext();
+            for (CommandElement element : tree.elements()) {
+                element.parse(src, args, context);
+            }
+            if (args.hasNext()) {
+                throw args.createError(Text.of("Too many arguments!"));
+            }
+            ArgumentBinding binding = method.binding();
+            ArgumentFrame bound = binding.bind(src, context);
+            // The bound frame is reused by the next line, the batch keeps its own copy.
+            ArgumentFrame frame = bound.copy();
+            binding.release(bound);
+            return new Invocation(method, frame, number, line);
+        } catch (AllElement.ParseFailure e) {
+            result.failure(number, line, message(e.exception));
+            return null;
+        } catch (ArgumentParseException e) {
+            result.failure(number, line, message(e));
+            return null;
+        }
+    }
+
+    private static void run(CommandSource src, List<Invocation> batch, ScriptResult result) {
+        for (Invocation invocation : batch) {
+            try {
+                CommandResult commandResult = invocation.tree.script(src, invocation.arguments);
+                result.success(commandResult != null ? commandResult.getSuccessCount().orElse(0) : 0);
+            } catch (AllElement.ParseFailure e) {
+                result.failure(invocation.number, invocation.line, message(e.exception));
+            } catch (CommandException e) {
+                result.failure(invocation.number, invocation.line, message(e));
+            } catch (Throwable t) {
+                result.failure(invocation.number, invocation.line, t.toString());
+            }
+        }
+    }
+
+    /**
+     * Finds the command the arguments of a root command run.
+     *
+     * @return The index at which the arguments of the command start
+     */
+    private static int resolve(CommandTree tree, String arguments, List<String> path) {
+        path.add(tree.aliases[0]);
+        int start = tokenStart(arguments, 0);
+        while (start < arguments.length()) {
+            int end = tokenEnd(arguments, start);
+            CommandTree child = tree.index().get(arguments, start, end);
+            if (child == null) {
+                break;
+            }
+            tree = child;
+            path.add(tree.aliases[0]);
+            start = tokenStart(arguments, end);
+        }
+        return start;
+    }
+
+    private static int tokenEnd(String input, int start) {
+        int end = start;
+        while (end < input.length() && !Character.isWhitespace(input.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int tokenStart(String input, int end) {
+        int start = end;
+        while (start < input.length() && Character.isWhitespace(input.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static String message(CommandException e) {
+        return e.getText() != null ? e.getText().toPlain() : e.toString();
+    }
+
+    /**
+     * Builds the command trees of an object, without registering them.
+     */
+    private Collection<CommandTree> analyze(Object obj, int flags) {
+        Collection<CommandTree> trees = null;
+        if ((flags & (METHODS | CLASSES)) == (METHODS | CLASSES)) {
+            trees = registerGenerated(obj, flags);
+        }
+        if (trees == null) {
+            trees = registerScanned(obj, flags);
+        }
+        return trees;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<CommandTree> registerGenerated(Object obj, int flags) {
+        Class<?> clazz = obj.getClass();
+        CommandRegistrar<Object> registrar;
+        try {
+            Class<?> registrarClass = Class.forName(clazz.getName() + CommandRegistrar.SUFFIX, true, clazz.getClassLoader());
+            registrar = (CommandRegistrar<Object>) registrarClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            e.printStackTrace();
+            return null;
+        } catch (ClassCastException e) {
+            e.printStackTrace();
+            return null;
+        }
+        Collection<CommandTree> collection = new ArrayList<CommandTree>();
+        registrar.register(obj, new RegistrarTree(null, collection, flags));
+        return collection;
+    }
+
+    private Collection<CommandTree> registerScanned(Object obj, int flags) {
+        Class<?> clazz = obj.getClass();
+        ModelCache.Version version = modelCache != null ? ModelCache.version(clazz) : null;
+        if (version != null) {
+            CommandModel model = modelCache.get(clazz, flags, version);
+            if (model != null) {
+                if (modelCache.isDirty()) {
+                    saveModelCache();
+                }
+                try {
+                    return replay(obj, null, model.roots, new CommandModel.Resolver(clazz.getClassLoader()));
+                } catch (ReflectiveOperationException e) {
+                    // A method the model refers to is gone, scan again.
+                }
+            }
+        }
+        Collection<CommandTree> trees = registerClass(null, obj, clazz, flags);
+        if (version != null) {
+            CommandModel model = new CommandModel();
             for (CommandTree tree : trees) {
-                register(tree);
+                model.roots.add(node(tree));
+            }
+            modelCache.put(clazz, flags, version, model);
+            saveModelCache();
+        }
+        return trees;
+    }
+
+    private CommandModel.Node node(CommandTree tree) {
+        CommandModel.Node node = describe(tree);
+        for (CommandTree child : tree.children()) {
+            node.children.add(node(child));
+        }
+        return node;
+    }
+
+    /**
+     * Describes a command without its children.
+     */
+    private CommandModel.Node describe(CommandTree tree) {
+        MethodCommandTree methodTree = (MethodCommandTree) tree;
+        CommandModel.Node node = new CommandModel.Node();
+        node.group = tree instanceof ClassCommandTree;
+        node.aliases = tree.aliases;
+        node.description = tree.description;
+        node.permission = tree.permission;
+        if (methodTree.method != null) {
+            node.declaringClass = methodTree.method.getDeclaringClass().getName();
+            node.method = methodTree.method.getName();
+            Class<?>[] types = methodTree.method.getParameterTypes();
+            node.parameterTypes = new String[types.length];
+            for (int i = 0; i < types.length; i++) {
+                node.parameterTypes[i] = types[i].getName();
+            }
+        }
+        if (methodTree.field != null) {
+            node.declaringClass = methodTree.field.getDeclaringClass().getName();
+            node.field = methodTree.field.getName();
+            node.parameterTypes = new String[methodTree.parameterTypes.length];
+            for (int i = 0; i < methodTree.parameterTypes.length; i++) {
+                node.parameterTypes[i] = methodTree.parameterTypes[i].getName();
+            }
+        }
+        for (Argument argument : tree.arguments) {
+            node.parameters.add(argument.parameter);
+        }
+        node.throttleUses = new int[tree.throttles.size()];
+        node.throttlePeriods = new long[tree.throttles.size()];
+        for (int i = 0; i < tree.throttles.size(); i++) {
+            node.throttleUses[i] = tree.throttles.get(i).uses;
+            node.throttlePeriods[i] = tree.throttles.get(i).period;
+        }
+        node.async = methodTree.async;
+        node.concurrency = methodTree.concurrency;
+        node.timeout = methodTree.timeout;
+        node.queued = methodTree.priority != null ? methodTree.priority.name() : null;
+        return node;
+    }
+
+    private Collection<CommandTree> replay(Object obj, @Nullable CommandTree parent, List<CommandModel.Node> nodes, CommandModel.Resolver resolver)
+            throws ReflectiveOperationException {
+        Collection<CommandTree> collection = new ArrayList<CommandTree>();
+        for (CommandModel.Node node : nodes) {
+            Method method = null;
+            Field field = null;
+            CommandInvoker invoker = null;
+            Class<?>[] types = new Class<?>[]{CommandSource.class};
+            List<CommandRegistrar.Parameter> parameters = node.parameters;
+            if (node.field != null) {
+                Class<?> declaringClass = resolver.type(node.declaringClass);
+                field = declaringClass.getDeclaredField(node.field);
+                ConstructorCommand constructorCommand = field.getAnnotation(ConstructorCommand.class);
+                if (constructorCommand == null) {
+                    throw new NoSuchFieldException(node.field);
+                }
+                Constructor<?> constructor = findConstructor(constructorCommand.value());
+                types = constructor.getParameterTypes();
+                // The constructed class is not part of the hash of the model, read its parameters again.
+                parameters = readParameters(types, constructor.getParameterAnnotations());
+                invoker = constructorInvoker(declaringClass == obj.getClass() ? obj : null, field, constructor);
+            } else if (node.method != null) {
+                Class<?> declaringClass = resolver.type(node.declaringClass);
+                types = new Class<?>[node.parameterTypes.length];
+                for (int i = 0; i < types.length; i++) {
+                    types[i] = resolver.type(node.parameterTypes[i]);
+                }
+                method = resolver.method(declaringClass, node.method, types);
+                // Like the scan, only methods of the registered class itself are bound to the object.
+                invoker = CommandInvoker.of(declaringClass == obj.getClass() ? obj : null, method);
+            }
+
+            MethodCommandTree tree;
+            if (node.group) {
+                tree = (MethodCommandTree) createClassTree(node.aliases, node.description, node.permission, invoker, types, node.parameters);
+            } else {
+                tree = createMethodTree(node.aliases, node.description, node.permission, invoker, types, parameters);
+                for (int i = 0; i < node.throttleUses.length; i++) {
+                    tree.addThrottle(new Throttle(node.throttleUses[i], node.throttlePeriods[i]));
+                }
+                if (node.async) {
+                    tree.setAsync(node.concurrency, node.timeout);
+                }
+                if (node.queued != null) {
+                    tree.priority = Queued.Priority.valueOf(node.queued);
+                }
+            }
+            tree.method = method;
+            tree.field = field;
+            for (CommandTree child : replay(obj, tree, node.children, resolver)) {
+                tree.addChild(child);
             }
+            collection.add(tree);
+        }
+        return collection;
+    }
+
+    private void saveModelCache() {
+        if (!modelCacheSavePending.compareAndSet(false, true)) {
+            return;
         }
+        game.getScheduler().createTaskBuilder().async().execute(new Runnable() {
+            @Override
+            public void run() {
+                modelCacheSavePending.set(false);
+                modelCache.save();
+            }
+        }).submit(plugin);
     }
 
     private Collection<CommandTree> registerClass(@Nullable CommandTree parent, Object obj, Class<?> clazz, int flags) {
         Collection<CommandTree> collection = new ArrayList<CommandTree>();
+        CommandTree tree = parent;
         if ((flags & CLASSES) == CLASSES) {
             if (clazz.isAnnotationPresent(Command.class)) {
                 Command command = clazz.getAnnotation(Command.class);
@@ -104,18 +972,18 @@ public class Commander {
                     }
                 }
 
-                parent = new ClassCommandTree(null, obj, classMethod);
-                if (classMethod != null) {
-                    parent.arguments.addAll(checkArguments(game, parent, classMethod));
-                }
-                parent.aliases = command.value();
-                if (parent.aliases.length == 0) {
-                    parent.aliases = new String[]{clazz.getSimpleName().toLowerCase()};
+                String[] aliases = command.value();
+                if (aliases.length == 0) {
+                    aliases = new String[]{clazz.getSimpleName().toLowerCase()};
                 }
-                if (permission != null) {
-                    parent.setPermission(permission.value());
+                if (classMethod != null) {
+                    tree = createClassTree(aliases, command.description(), permission != null ? permission.value() : "",
+                            CommandInvoker.of(obj, classMethod), classMethod.getParameterTypes(), readParameters(classMethod));
+                    ((MethodCommandTree) tree).method = classMethod;
+                } else {
+                    tree = createClassTree(aliases, command.description(), permission != null ? permission.value() : "",
+                            null, new Class<?>[]{CommandSource.class}, Collections.<CommandRegistrar.Parameter>emptyList());
                 }
-                parent.description = command.description();
             }
 
             for (Class<?> nestedClazz : clazz.getDeclaredClasses()) {
@@ -123,11 +991,11 @@ public class Commander {
                     System.err.println("Nested class " + nestedClazz.getSimpleName() + " is not static. This is a requirement.");
                     continue;
                 }
-                for (CommandTree tree : registerClass(parent, null, nestedClazz, flags)) {
-                    if (parent == null) {
-                        collection.add(tree);
+                for (CommandTree nestedTree : registerClass(tree, null, nestedClazz, flags)) {
+                    if (tree == null) {
+                        collection.add(nestedTree);
                     } else {
-                        parent.addChild(tree);
+                        tree.addChild(nestedTree);
                     }
                 }
             }
@@ -136,36 +1004,214 @@ public class Commander {
 
         if ((flags & METHODS) == METHODS) {
             for (Method method : clazz.getDeclaredMethods()) {
-                try {
-                    CommandTree methodTree = createCommandTreeOfMethod(obj, method);
+                CommandTree methodTree = createCommandTreeOfMethod(obj, method);
 
-                    if (methodTree == null) {
-                        continue;
-                    }
+                if (methodTree == null) {
+                    continue;
+                }
 
-                    if (parent == null) {
-                        collection.add(methodTree);
-                    } else {
-                        parent.addChild(methodTree);
-                    }
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
+                if (tree == null) {
+                    collection.add(methodTree);
+                } else {
+                    tree.addChild(methodTree);
                 }
             }
         }
 
-        if (parent != null) {
-            collection.add(parent);
+        if ((flags & FIELDS) == FIELDS) {
+            for (Field field : clazz.getDeclaredFields()) {
+                CommandTree fieldTree = createCommandTreeOfField(obj, field);
+
+                if (fieldTree == null) {
+                    continue;
+                }
+
+                if (tree == null) {
+                    collection.add(fieldTree);
+                } else {
+                    tree.addChild(fieldTree);
+                }
+            }
+        }
+
+        // Only hand back a tree created here, a nested class without @Command adds to its outer tree.
+        if (tree != null && tree != parent) {
+            collection.add(tree);
         }
         return collection;
     }
 
-    private void register(CommandTree commandTree) {
+    private void register(CommandTree commandTree, String owner) {
         checkNotNull(commandTree);
-        game.getCommandManager().register(plugin, commandTree.build(), commandTree.aliases);
+        commandTree.publish();
+        if (statsEnabled) {
+            instrument(commandTree, commandTree.aliases[0]);
+        }
+        java.util.Optional<CommandMapping> mapping = game.getCommandManager().register(plugin, new RecordingCallable(commandTree.callable(), commandTree),
+                commandTree.aliases);
+        if (mapping.isPresent()) {
+            roots.add(new Root(owner, commandTree, mapping.get()));
+        }
+        helpIndex.invalidate();
     }
 
-    private CommandTree createCommandTreeOfMethod(Object obj, Method method) throws IllegalAccessException {
+    /**
+     * Removes a registered root command.
+     *
+     * @param root        The root
+     * @param replacement The tree that replaces the root and keeps some of its commands, or null
+     */
+    private void unregister(Root root, @Nullable CommandTree replacement) {
+        game.getCommandManager().removeMapping(root.mapping);
+        roots.remove(root);
+        Set<CommandTree> kept = Collections.newSetFromMap(new IdentityHashMap<CommandTree, Boolean>());
+        if (replacement != null) {
+            collect(replacement, kept);
+        }
+        Set<CommandTree> removed = Collections.newSetFromMap(new IdentityHashMap<CommandTree, Boolean>());
+        collect(root.tree, removed);
+        for (CommandTree tree : removed) {
+            if (tree.stats != null && !kept.contains(tree)) {
+                stats.remove(tree.stats);
+            }
+        }
+    }
+
+    private static void collect(CommandTree tree, Set<CommandTree> trees) {
+        trees.add(tree);
+        for (CommandTree child : tree.children()) {
+            collect(child, trees);
+        }
+    }
+
+    /**
+     * Merges a newly scanned command tree into a registered one.
+     *
+     * @return The registered tree if nothing changed, otherwise the new tree with all unchanged
+     * subtrees of the registered tree in it
+     */
+    private CommandTree merge(CommandTree old, CommandTree tree) {
+        Map<String, CommandTree> oldChildren = new HashMap<String, CommandTree>();
+        for (CommandTree child : old.children()) {
+            oldChildren.put(child.aliases[0], child);
+        }
+        boolean unchanged = old.children().size() == tree.children().size() && sameCommand(old, tree);
+        List<CommandTree> children = new ArrayList<CommandTree>();
+        for (CommandTree child : tree.children()) {
+            CommandTree oldChild = oldChildren.get(child.aliases[0]);
+            CommandTree merged = oldChild != null ? merge(oldChild, child) : child;
+            unchanged &= merged == oldChild;
+            children.add(merged);
+        }
+        if (unchanged) {
+            // The spec stays, only the object the command is invoked on changes.
+            ((MethodCommandTree) old).invoker = ((MethodCommandTree) tree).invoker;
+            ((MethodCommandTree) old).method = ((MethodCommandTree) tree).method;
+            ((MethodCommandTree) old).field = ((MethodCommandTree) tree).field;
+            return old;
+        }
+        tree.children().clear();
+        tree.index = null;
+        for (CommandTree child : children) {
+            tree.addChild(child);
+        }
+        return tree;
+    }
+
+    private boolean sameCommand(CommandTree old, CommandTree tree) {
+        MethodCommandTree oldMethod = (MethodCommandTree) old;
+        MethodCommandTree newMethod = (MethodCommandTree) tree;
+        return old.getClass() == tree.getClass()
+                && old.permissions == tree.permissions
+                && oldMethod.compiled == newMethod.compiled
+                && (oldMethod.invoker == null) == (newMethod.invoker == null)
+                && Arrays.equals(oldMethod.parameterTypes, newMethod.parameterTypes)
+                && sameSignature(old, tree);
+    }
+
+    private boolean sameSignature(CommandTree old, CommandTree tree) {
+        byte[] signature = signature(old);
+        return signature != null && Arrays.equals(signature, signature(tree));
+    }
+
+    /**
+     * Serializes everything of a command that goes into its spec, except for its children.
+     *
+     * @return The signature, or null if a string of the command is too long to serialize, in
+     * which case the command counts as changed
+     */
+    @Nullable
+    private byte[] signature(CommandTree tree) {
+        CommandModel model = new CommandModel();
+        model.roots.add(describe(tree));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            model.write(new DataOutputStream(bytes));
+        } catch (UTFDataFormatException e) {
+            return null;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<HelpIndex.Line> helpLines() {
+        List<CommandTree> trees = new ArrayList<CommandTree>();
+        for (Root root : roots) {
+            trees.add(root.tree);
+        }
+        List<HelpIndex.Line> lines = new ArrayList<HelpIndex.Line>();
+        for (CommandTree root : sorted(trees)) {
+            helpLines(root, "/" + root.aliases[0], new ArrayList<String>(), lines);
+        }
+        return lines;
+    }
+
+    private void helpLines(CommandTree tree, String path, List<String> permissions, List<HelpIndex.Line> lines) {
+        List<String> chain = new ArrayList<String>(permissions);
+        if (!tree.permission().isEmpty()) {
+            chain.add(tree.permission());
+        }
+        CommandElement usage = null;
+        List<String> usagePermissions = new ArrayList<String>();
+        if (!(tree instanceof ClassCommandTree) || ((ClassCommandTree) tree).invoker != null) {
+            usage = GenericArguments.seq(tree.elements());
+            for (Argument argument : tree.arguments) {
+                if (argument.permission != null) {
+                    usagePermissions.add(argument.permission);
+                }
+            }
+        }
+        lines.add(new HelpIndex.Line(path, usage, tree.description, chain.toArray(new String[chain.size()]),
+                usagePermissions.toArray(new String[usagePermissions.size()]), tree.permissions));
+        for (CommandTree child : sorted(tree.children())) {
+            helpLines(child, path + " " + child.aliases[0], chain, lines);
+        }
+    }
+
+    private static List<CommandTree> sorted(Collection<CommandTree> trees) {
+        List<CommandTree> sorted = new ArrayList<CommandTree>(trees);
+        Collections.sort(sorted, new Comparator<CommandTree>() {
+            @Override
+            public int compare(CommandTree o1, CommandTree o2) {
+                return o1.aliases[0].compareTo(o2.aliases[0]);
+            }
+        });
+        return sorted;
+    }
+
+    private void instrument(CommandTree tree, String path) {
+        // A command kept by a reload is instrumented already.
+        if (tree.stats == null) {
+            tree.stats = new CommandStats(path, tree.permission());
+            stats.add(tree.stats);
+        }
+        for (CommandTree child : tree.children()) {
+            instrument(child, path + " " + child.aliases[0]);
+        }
+    }
+
+    private CommandTree createCommandTreeOfMethod(Object obj, Method method) {
         if (method.isAnnotationPresent(Ignore.class)) {
             return null;
         }
@@ -175,79 +1221,218 @@ public class Commander {
         }
 
         Permission permission = method.getAnnotation(Permission.class);
+        Cooldown cooldown = method.getAnnotation(Cooldown.class);
+        RateLimit rateLimit = method.getAnnotation(RateLimit.class);
+        Async async = method.getAnnotation(Async.class);
+        Queued queued = method.getAnnotation(Queued.class);
+
+        checkMethod(method);
+
+        String[] aliases = command.value();
+        if (aliases.length == 0) {
+            aliases = new String[]{method.getName()};
+        }
+
+        MethodCommandTree tree = createMethodTree(aliases, command.description(), permission != null ? permission.value() : "",
+                CommandInvoker.of(obj, method), method.getParameterTypes(), readParameters(method));
+        tree.method = method;
+        if (cooldown != null) {
+            tree.addThrottle(new Throttle(1, cooldown.unit().toNanos(cooldown.value())));
+        }
+        if (rateLimit != null) {
+            tree.addThrottle(new Throttle(rateLimit.value(), rateLimit.unit().toNanos(rateLimit.per())));
+        }
+        if (async != null) {
+            tree.setAsync(async.concurrency(), async.timeout());
+        }
+        if (queued != null) {
+            tree.priority = queued.value();
+        }
+        return tree;
+    }
+
+    private void checkMethod(Method method) {
+        Class<?>[] parameters = method.getParameterTypes();
+        boolean returnsResult = method.getReturnType().equals(CommandResult.class) || method.getReturnType().equals(CompletableFuture.class);
+        Preconditions.checkArgument(returnsResult && !(parameters.length > 0 && !parameters[0].equals(CommandSource.class)), !returnsResult ? "Method " + method.getName() + " must return CommandResult!" : "First argument of method " + method.getName() + " must be CommandSource!");
+    }
 
-        CommandTree commandTree = checkMethod(game, null, obj, method);
-        if (commandTree == null) {
+    private CommandTree createCommandTreeOfField(Object obj, Field field) {
+        Command command = field.getAnnotation(Command.class);
+        ConstructorCommand constructorCommand = field.getAnnotation(ConstructorCommand.class);
+        if (command == null || constructorCommand == null) {
             return null;
         }
 
-        if (permission != null) {
-            commandTree.setPermission(permission.value());
-        }
+        Permission permission = field.getAnnotation(Permission.class);
+        Constructor<?> constructor = findConstructor(constructorCommand.value());
+
+        String[] aliases = command.value();
+        if (aliases.length == 0) {
+            aliases = new String[]{field.getName()};
+        }
+
+        MethodCommandTree tree = createMethodTree(aliases, command.description(), permission != null ? permission.value() : "",
+                constructorInvoker(obj, field, constructor), constructor.getParameterTypes(),
+                readParameters(constructor.getParameterTypes(), constructor.getParameterAnnotations()));
+        tree.field = field;
+        return tree;
+    }
+
+    private static Constructor<?> findConstructor(Class<?> clazz) {
+        Constructor<?> found = null;
+        for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+            Class<?>[] parameters = constructor.getParameterTypes();
+            if (parameters.length > 0 && parameters[0].equals(CommandSource.class)) {
+                Preconditions.checkArgument(found == null, "Class " + clazz.getSimpleName() + " must have a single constructor taking a CommandSource!");
+                found = constructor;
+            }
+        }
+        Preconditions.checkArgument(found != null, "Class " + clazz.getSimpleName() + " must have a constructor taking a CommandSource!");
+        return found;
+    }
+
+    private static CommandInvoker constructorInvoker(@Nullable Object obj, Field field, Constructor<?> constructor) {
+        ConstructorCommand constructorCommand = field.getAnnotation(ConstructorCommand.class);
+        boolean isStatic = Modifier.isStatic(field.getModifiers());
+        Preconditions.checkArgument(ConstructorCommandListener.class.isAssignableFrom(field.getType()),
+                "Field " + field.getName() + " must be a ConstructorCommandListener!");
+        Preconditions.checkArgument(isStatic || obj != null, "Field " + field.getName() + " of a nested class must be static!");
+        Object listener;
+        try {
+            field.setAccessible(true);
+            listener = field.get(isStatic ? null : obj);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Field " + field.getName() + " cannot be read!", e);
+        }
+        Preconditions.checkArgument(listener != null, "Field " + field.getName() + " must not be null!");
+
+        CommandRegistrar.Resetter reset = null;
+        if (!constructorCommand.reset().isEmpty()) {
+            try {
+                reset = ConstructorInvoker.resetter(constructor.getDeclaringClass().getDeclaredMethod(constructorCommand.reset(),
+                        constructor.getParameterTypes()));
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("Method " + constructorCommand.reset() + " must take the parameters of the constructor!", e);
+            }
+        }
+        return new ConstructorInvoker((ConstructorCommandListener<?>) listener, CommandInvoker.of(constructor), reset, constructorCommand.poolSize());
+    }
+
+    private List<CommandRegistrar.Parameter> readParameters(Method method) {
+        return readParameters(method.getParameterTypes(), method.getParameterAnnotations());
+    }
 
-        commandTree.aliases = command.value();
-        if (commandTree.aliases.length == 0) {
-            commandTree.aliases = new String[]{method.getName()};
+    private List<CommandRegistrar.Parameter> readParameters(Class<?>[] types, Annotation[][] annotations) {
+        List<CommandRegistrar.Parameter> parameters = new ArrayList<CommandRegistrar.Parameter>();
+
+        for (int i = 1; i < types.length; i++) {
+            CommandRegistrar.Parameter parameter = CommandRegistrar.Parameter.of(types[i]);
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof Key) {
+                    parameter.key(((Key) annotation).value());
+                } else if (annotation instanceof Optional) {
+                    parameter.optional(((Optional) annotation).weak());
+                } else if (annotation instanceof Choices) {
+                    Choices choices = (Choices) annotation;
+                    parameter.choices(choices.value(), choices.current(), choices.ignoreCase(), choices.limit());
+                } else if (annotation instanceof Literal) {
+                    parameter.literal(((Literal) annotation).value());
+                } else if (annotation instanceof Conjoin) {
+                    parameter.conjoin();
+                } else if (annotation instanceof Flag) {
+                    parameter.flag();
+                } else if (annotation instanceof Permission) {
+                    parameter.permission(((Permission) annotation).value());
+                } else if (annotation instanceof Range) {
+                    parameter.range(((Range) annotation).min(), ((Range) annotation).max());
+                } else if (annotation instanceof All) {
+                    parameter.all(((All) annotation).value(), ((All) annotation).limit());
+                }
+            }
+            parameters.add(parameter);
         }
-        commandTree.description = command.description();
 
-        return commandTree;
+        return parameters;
     }
 
-    private CommandTree checkMethod(Game game, CommandTree parent, Object obj, Method method) throws IllegalAccessException {
-        Class<?>[] parameters = method.getParameterTypes();
-        Preconditions.checkArgument(method.getReturnType().equals(CommandResult.class) && !(parameters.length > 0 && !parameters[0].equals(CommandSource.class)), !method.getReturnType().equals(CommandResult.class) ? "Method " + method.getName() + " must return CommandResult!" : "First argument of method " + method.getName() + " must be CommandSource!");
-
-        CommandTree tree = new MethodCommandTree(parent, obj, method);
-        tree.arguments.addAll(checkArguments(game, parent, method));
+    private CommandTree createClassTree(String[] aliases, String description, String permission, @Nullable CommandInvoker invoker,
+            Class<?>[] parameterTypes, List<CommandRegistrar.Parameter> parameters) {
+        ClassCommandTree tree = new ClassCommandTree(null, invoker, parameterTypes);
+        tree.dispatcher = asyncDispatcher;
+        tree.permissions = permissionCache;
+        tree.aliases = aliases;
+        tree.setPermission(permission);
+        tree.description = description;
+        if (invoker != null) {
+            tree.arguments.addAll(checkArguments(game, tree, parameters));
+        }
+        return tree;
+    }
 
+    private MethodCommandTree createMethodTree(String[] aliases, String description, String permission, CommandInvoker invoker,
+            Class<?>[] parameterTypes, List<CommandRegistrar.Parameter> parameters) {
+        MethodCommandTree tree = new MethodCommandTree(null, invoker, parameterTypes);
+        tree.dispatcher = asyncDispatcher;
+        tree.queue = commandQueue;
+        tree.permissions = permissionCache;
+        tree.compiled = compiledParsing;
+        tree.arguments.addAll(checkArguments(game, null, parameters));
+        tree.aliases = aliases;
+        tree.setPermission(permission);
+        tree.description = description;
         return tree;
     }
 
-    private List<Argument> checkArguments(Game game, CommandTree parent, Method method) {
+    private List<Argument> checkArguments(Game game, CommandTree parent, List<CommandRegistrar.Parameter> parameters) {
         List<Argument> arguments = new ArrayList<Argument>();
 
-        Class<?>[] parameters = method.getParameterTypes();
-        for (int i = 1; i < parameters.length; i++) {
-            Map<Class<? extends Annotation>, Annotation> annotations = new HashMap<Class<? extends Annotation>, Annotation>();
-            for (Annotation annotation : method.getParameterAnnotations()[i]) {
-                annotations.put(annotation.annotationType(), annotation);
-            }
-            arguments.add(checkParameter(game, parent, parameters[i], annotations, parameters[i].getSimpleName().toLowerCase() + i));
+        for (int i = 0; i < parameters.size(); i++) {
+            CommandRegistrar.Parameter parameter = parameters.get(i);
+            arguments.add(checkParameter(game, parent, parameter, parameter.type.getSimpleName().toLowerCase() + (i + 1)));
         }
 
         return arguments;
     }
 
-    private Argument checkParameter(Game game, CommandTree parent, Class<?> parameter, Map<Class<? extends Annotation>, Annotation> annotations, String defaultKey) {
-        Text key = Text.of(parameter.isAnnotationPresent(Key.class) ? parameter.getAnnotation(Key.class).value() : defaultKey);
+    private Argument checkParameter(Game game, CommandTree parent, CommandRegistrar.Parameter parameterModel, String defaultKey) {
+        // An @All parameter gets the element of a single value, which is parsed for every argument.
+        Class<?> parameter = parameterModel.all != null ? parameterModel.all : parameterModel.type;
+        if (parameterModel.all != null) {
+            Preconditions.checkArgument(AllElement.supports(parameterModel.type),
+                    "@All parameter must be a Collection, List, Iterable or Stream, not " + parameterModel.type.getSimpleName());
+        }
+        Text key = Text.of(parameterModel.key != null ? parameterModel.key : defaultKey);
 
         CommandElement commandElement = null;
 
+        if (parameterModel.flag) {
+            // Flags have no element of their own, they are all parsed by the FlagElement of the command.
+            Preconditions.checkArgument(parameterModel.key != null, "Flag parameter of type " + parameter.getSimpleName() + " must have a @Key!");
+            Argument argument = new Argument(parameterModel.key, null);
+            argument.parameter = parameterModel;
+            return argument;
+        }
+
         if (parameter.equals(String.class)) {
-            if (annotations.containsKey(Flag.class) && parameter.isAnnotationPresent(Key.class)) {
-                // TODO: long flag
-            } else if (annotations.containsKey(Conjoin.class)) {
+            if (parameterModel.conjoin) {
                 commandElement = GenericArguments.remainingJoinedStrings(key);
             } else {
                 commandElement = GenericArguments.string(key);
             }
         }
         if (parameter.equals(boolean.class)) {
-            if (annotations.containsKey(Flag.class)) {
-                if (parameter.isAnnotationPresent(Key.class)) {
-                    // TODO: short flag
-                }
-            } else if (annotations.containsKey(Literal.class)) {
-                Literal literal = getParameterAnnotation(annotations, Literal.class);
-                commandElement = GenericArguments.literal(key, literal.value());
+            if (parameterModel.literal != null) {
+                commandElement = GenericArguments.literal(key, parameterModel.literal);
             } else {
                 commandElement = GenericArguments.bool(key);
             }
         }
 
-        if (parameter.equals(int.class)) {
+        if (parameter.equals(int.class) && !parameterModel.hasRange()) {
             commandElement = GenericArguments.integer(key);
+        } else if (NumberElement.supports(parameter)) {
+            commandElement = new NumberElement(key, parameter, parameterModel.min, parameterModel.max);
         }
 
         if (parameter.isEnum()) {
@@ -274,43 +1459,143 @@ public class Commander {
             commandElement = GenericArguments.catalogedElement(key, parameter.asSubclass(CatalogType.class));
         }
 
-        if (annotations.containsKey(Choices.class)) {
-            Choices choices = getParameterAnnotation(annotations, Choices.class);
-            if (choices.current()) {
-                commandElement = new CurrentChoicesCommandElement(key, (Map<String, ?>) dependencies.get(choices.value()), false);
+        if (parameterModel.choices != null) {
+            Object choices = dependencies.get(parameterModel.choices);
+            checkNotNull(choices, "Unknown dependency " + parameterModel.choices);
+            // A provider is only read in the background, so its choices are always current.
+            if (parameterModel.currentChoices || choices instanceof ChoiceProvider) {
+                commandElement = new CurrentChoicesCommandElement(key, choiceIndex(parameterModel.choices, parameterModel.ignoreCase),
+                        parameterModel.limit);
             } else {
-                GenericArguments.choices(key, (Map<String, ?>) dependencies.get(choices.value()), false);
+                commandElement = GenericArguments.choices(key, (Map<String, ?>) choices, false);
             }
         }
 
-        if (commandElement != null && annotations.containsKey(Optional.class)) {
-            if (getParameterAnnotation(annotations, Optional.class).weak()) {
+        if (commandElement != null && parameterModel.all != null) {
+            commandElement = new AllElement(key, commandElement, parameterModel.allLimit);
+        }
+
+        if (commandElement != null && parameterModel.optional) {
+            if (parameterModel.weak) {
                 commandElement = GenericArguments.optionalWeak(commandElement);
             } else {
                 commandElement = GenericArguments.optional(commandElement);
             }
         }
 
-        if (commandElement != null && annotations.containsKey(Permission.class)) {
-            Permission permission = getParameterAnnotation(annotations, Permission.class);
-            if (!permission.value().isEmpty()) {
-                commandElement = GenericArguments.requiringPermission(commandElement, (parent != null ? parent.permission() + "." : "") + permission
-                        .value());
+        String permission = null;
+        if (commandElement != null && parameterModel.permission != null) {
+            if (!parameterModel.permission.isEmpty()) {
+                permission = (parent != null ? parent.permission() + "." : "") + parameterModel.permission;
+                if (permissionCache != null) {
+                    commandElement = new CachedPermissionElement(commandElement, permissionCache, permission);
+                } else {
+                    commandElement = GenericArguments.requiringPermission(commandElement, permission);
+                }
             }
         }
 
-        return new Argument(key.toPlain(), commandElement);
+        Argument argument = new Argument(key.toPlain(), commandElement);
+        argument.parameter = parameterModel;
+        argument.collection = parameterModel.all != null;
+        argument.permission = permission;
+        argument.permissions = permissionCache;
+        return argument;
     }
 
-    private <T extends Annotation> T getParameterAnnotation(Map<Class<? extends Annotation>, Annotation> annotations, Class<T> annotation) {
-        return annotation.cast(annotations.get(annotation));
+    private class RegistrarTree implements CommandRegistrar.Tree {
+
+        private final CommandTree tree;
+        private final Collection<CommandTree> collection;
+        private final int flags;
+
+        RegistrarTree(@Nullable CommandTree tree, Collection<CommandTree> collection, int flags) {
+            this.tree = tree;
+            this.collection = collection;
+            this.flags = flags;
+        }
+
+        @Override
+        public CommandRegistrar.Tree group(String[] aliases, String description, String permission, @Nullable CommandRegistrar.Invoker parent,
+                CommandRegistrar.Parameter... parameters) {
+            CommandTree group = createClassTree(aliases, description, permission, parent != null ? CommandInvoker.of(parent) : null,
+                    parameterTypes(parameters), Arrays.asList(parameters));
+            add(group);
+            return new RegistrarTree(group, collection, flags);
+        }
+
+        @Override
+        public CommandRegistrar.Options command(String[] aliases, String description, String permission, CommandRegistrar.Invoker invoker,
+                CommandRegistrar.Parameter... parameters) {
+            final MethodCommandTree command = createMethodTree(aliases, description, permission, CommandInvoker.of(invoker),
+                    parameterTypes(parameters), Arrays.asList(parameters));
+            add(command);
+            return new CommandRegistrar.Options() {
+                @Override
+                public CommandRegistrar.Options cooldown(long cooldown, TimeUnit unit) {
+                    command.addThrottle(new Throttle(1, unit.toNanos(cooldown)));
+                    return this;
+                }
+
+                @Override
+                public CommandRegistrar.Options rateLimit(int uses, long per, TimeUnit unit) {
+                    command.addThrottle(new Throttle(uses, unit.toNanos(per)));
+                    return this;
+                }
+
+                @Override
+                public CommandRegistrar.Options async(int concurrency, long timeout) {
+                    command.setAsync(concurrency, timeout);
+                    return this;
+                }
+
+                @Override
+                public CommandRegistrar.Options queued(Queued.Priority priority) {
+                    command.priority = checkNotNull(priority);
+                    return this;
+                }
+            };
+        }
+
+        @Override
+        public void constructor(String[] aliases, String description, String permission, ConstructorCommandListener<?> listener,
+                CommandRegistrar.Invoker constructor, @Nullable CommandRegistrar.Resetter reset, int poolSize,
+                CommandRegistrar.Parameter... parameters) {
+            // The registrar describes every command of the class, like a scan with all flags.
+            if ((flags & FIELDS) != FIELDS) {
+                return;
+            }
+            CommandInvoker invoker = new ConstructorInvoker(listener, CommandInvoker.of(constructor), reset, poolSize);
+            add(createMethodTree(aliases, description, permission, invoker, parameterTypes(parameters), Arrays.asList(parameters)));
+        }
+
+        private void add(CommandTree child) {
+            if (tree == null) {
+                collection.add(child);
+            } else {
+                tree.addChild(child);
+            }
+        }
+
+        private Class<?>[] parameterTypes(CommandRegistrar.Parameter[] parameters) {
+            Class<?>[] types = new Class<?>[parameters.length + 1];
+            types[0] = CommandSource.class;
+            for (int i = 0; i < parameters.length; i++) {
+                types[i + 1] = parameters[i].type;
+            }
+            return types;
+        }
+
     }
 
-    private static class Argument {
+    static class Argument {
 
-        private String key;
-        private boolean collection = false;
-        private CommandElement commandElement;
+        String key;
+        boolean collection = false;
+        CommandElement commandElement;
+        CommandRegistrar.Parameter parameter;
+        String permission;
+        PermissionCache permissions;
 
         Argument(String key, CommandElement commandElement) {
             this.key = key;
@@ -323,11 +1608,20 @@ public class Commander {
 
         private CommandTree parent;
         protected List<Argument> arguments = new ArrayList<Argument>();
-        private Set<CommandTree> children = new HashSet<CommandTree>();
+        // Built in a plain list and replaced by an immutable snapshot on registration, so
+        // dispatching never sees a child half added.
+        private volatile List<CommandTree> children = new ArrayList<CommandTree>();
+        private volatile AliasIndex<CommandTree> index;
 
         String[] aliases;
         private String permission = "";
+        private String resolvedPermission;
+        private volatile CommandElement[] elements;
+        private LazyCommandCallable lazy;
         String description = "";
+        CommandStats stats;
+        PermissionCache permissions;
+        List<Throttle> throttles = new ArrayList<Throttle>();
 
         CommandTree(CommandTree parent) {
             this.parent = parent;
@@ -335,75 +1629,305 @@ public class Commander {
 
         void addChild(CommandTree tree) {
             children.add(tree);
+            index = null;
         }
 
-        Set<CommandTree> children() {
+        List<CommandTree> children() {
             return children;
         }
 
+        /**
+         * Replaces the children of this command and of its descendants by immutable snapshots,
+         * once the tree is built and before it is registered.
+         */
+        void publish() {
+            List<CommandTree> children = this.children;
+            for (CommandTree child : children) {
+                child.publish();
+            }
+            this.children = Collections.unmodifiableList(new ArrayList<CommandTree>(children));
+        }
+
+        /**
+         * Gets the children of this command by alias.
+         */
+        AliasIndex<CommandTree> index() {
+            AliasIndex<CommandTree> index = this.index;
+            if (index == null) {
+                Map<String, CommandTree> aliases = new HashMap<String, CommandTree>();
+                for (CommandTree child : children) {
+                    for (String alias : child.aliases) {
+                        aliases.put(alias, child);
+                    }
+                }
+                index = aliases.isEmpty() ? AliasIndex.<CommandTree>empty() : new AliasIndex<CommandTree>(aliases);
+                this.index = index;
+            }
+            return index;
+        }
+
         void setPermission(String permission) {
             this.permission = permission;
+            this.resolvedPermission = null;
         }
 
         String permission() {
-            return (parent != null ? parent.permission() + "." : "") + (permission.isEmpty() ? aliases[0] : permission);
+            String resolved = resolvedPermission;
+            if (resolved == null) {
+                resolved = (parent != null ? parent.permission() + "." : "") + (permission.isEmpty() ? aliases[0] : permission);
+                resolvedPermission = resolved;
+            }
+            return resolved;
+        }
+
+        CommandElement[] elements() {
+            CommandElement[] elements = this.elements;
+            if (elements == null) {
+                List<CommandElement> positional = new ArrayList<CommandElement>();
+                for (Argument argument : arguments) {
+                    if (argument.commandElement != null) {
+                        positional.add(argument.commandElement);
+                    }
+                }
+                elements = positional.toArray(new CommandElement[positional.size()]);
+                FlagTable flags = FlagTable.of(arguments);
+                if (flags != null) {
+                    elements = new CommandElement[]{new FlagElement(flags, GenericArguments.seq(elements))};
+                }
+                this.elements = elements;
+            }
+            return elements;
         }
 
         abstract CommandExecutor executor();
 
         abstract CommandSpec build();
 
+        /**
+         * Gets the callable of this command as a child of another, which is shared by every parent
+         * it is added to, so a reloaded parent reuses the spec of an unchanged child.
+         */
+        synchronized CommandCallable lazy() {
+            if (lazy == null) {
+                lazy = new LazyCommandCallable(this);
+            }
+            return lazy;
+        }
+
+        void addThrottle(Throttle throttle) {
+            throttles.add(throttle);
+        }
+
+        /**
+         * Creates the callable which parses and executes the command.
+         */
+        CommandCallable base() {
+            return build();
+        }
+
+        CommandCallable callable() {
+            CommandCallable callable = base();
+            if (permissions != null && !permission().isEmpty()) {
+                callable = new CachedPermissionCallable(callable, permissions, permission());
+            }
+            if (stats != null) {
+                callable = new InstrumentedCallable(callable, stats);
+            }
+            return callable;
+        }
+
     }
 
     private static class MethodCommandTree extends CommandTree {
 
-        protected Object obj;
-        protected Method method;
-
-        MethodCommandTree(CommandTree parent, Object obj, Method method) {
+        protected volatile CommandInvoker invoker;
+        protected Class<?>[] parameterTypes;
+        AsyncDispatcher dispatcher;
+        CommandQueue queue;
+        Queued.Priority priority;
+        Method method;
+        Field field;
+        private volatile ArgumentBinding binding;
+        boolean async = false;
+        private Semaphore permits;
+        int concurrency;
+        long timeout;
+        boolean compiled = false;
+
+        MethodCommandTree(CommandTree parent, CommandInvoker invoker, Class<?>[] parameterTypes) {
             super(parent);
-            this.obj = obj;
-            this.method = method;
+            this.invoker = invoker;
+            this.parameterTypes = parameterTypes;
+        }
+
+        void setAsync(int concurrency, long timeout) {
+            this.async = true;
+            this.concurrency = concurrency;
+            this.permits = concurrency > 0 ? new Semaphore(concurrency) : null;
+            this.timeout = timeout;
+        }
+
+        /**
+         * Checks whether the method runs after the command returns, on a worker or from the queue.
+         */
+        boolean deferred() {
+            return async || priority != null;
+        }
+
+        /**
+         * Gets the plan which binds parsed arguments to the parameters of the method.
+         */
+        ArgumentBinding binding() {
+            ArgumentBinding binding = this.binding;
+            if (binding == null) {
+                this.binding = binding = ArgumentBinding.compile(parameterTypes, arguments, deferred());
+            }
+            return binding;
         }
 
         @Override
         CommandExecutor executor() {
+            final ArgumentBinding binding = binding();
             return new CommandExecutor() {
                 @Override
                 public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+                    ArgumentFrame arguments;
                     try {
-                        List<Object> arguments = new ArrayList<Object>();
-                        arguments.add(src);
-                        for (Argument argument : MethodCommandTree.this.arguments) {
-                            if (argument.collection) {
-                                arguments.add(args.getAll(argument.key));
-                            } else {
-                                arguments.add(args.getOne(argument.key).orElse(null));
-                            }
-                        }
-                        return (CommandResult) method.invoke(obj, arguments.toArray());
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    } catch (InvocationTargetException e) {
-                        e.printStackTrace();
+                        arguments = binding.bind(src, args);
+                    } catch (AllElement.ParseFailure e) {
+                        throw e.exception;
+                    }
+                    try {
+                        throttle(src);
+                        return MethodCommandTree.this.execute(src, arguments);
+                    } finally {
+                        binding.release(arguments);
                     }
-                    return CommandResult.empty();
                 }
             };
         }
 
+        /**
+         * Checks the throttles of this command for a source before its arguments are parsed,
+         * without using them.
+         *
+         * @throws CommandException If the source has to wait
+         */
+        void checkThrottle(CommandSource src) throws CommandException {
+            if (throttles.isEmpty()) {
+                return;
+            }
+            long wait = Throttle.waitTime(throttles, src.getIdentifier());
+            if (wait > 0) {
+                throw waitException(wait);
+            }
+        }
+
+        /**
+         * Uses the throttles of this command for a source, once its arguments are parsed.
+         *
+         * @throws CommandException If the source has to wait
+         */
+        void throttle(CommandSource src) throws CommandException {
+            if (throttles.isEmpty()) {
+                return;
+            }
+            long wait = Throttle.tryAcquire(throttles, src.getIdentifier());
+            if (wait > 0) {
+                throw waitException(wait);
+            }
+        }
+
+        private static CommandException waitException(long wait) {
+            return new CommandException(Text.of(String.format("You must wait %.1f seconds before using this command again.",
+                    wait / (double) TimeUnit.SECONDS.toNanos(1))));
+        }
+
+        /**
+         * Invokes the command method with bound arguments, which may be reused once this returns.
+         */
+        CommandResult execute(final CommandSource src, ArgumentFrame arguments) throws CommandException {
+            if (priority != null) {
+                final ArgumentFrame queued = arguments.copy();
+                queue.offer(new CommandQueue.Entry(src, priority) {
+                    @Override
+                    void run() throws CommandException {
+                        invoke(src, queued);
+                    }
+                });
+                return CommandResult.success();
+            }
+            return invoke(src, arguments);
+        }
+
+        /**
+         * Invokes the command method for a script, throwing anything the method throws.
+         */
+        CommandResult script(CommandSource src, ArgumentFrame arguments) throws Throwable {
+            if (deferred()) {
+                return execute(src, arguments);
+            }
+            return call(src, arguments);
+        }
+
+        private CommandResult call(CommandSource src, ArgumentFrame arguments) throws Throwable {
+            Object result = invoker.invoke(arguments.values, arguments.primitives);
+            if (result instanceof CompletableFuture) {
+                dispatcher.watch(src, (CompletableFuture<?>) result);
+                return CommandResult.success();
+            }
+            return (CommandResult) result;
+        }
+
+        private CommandResult invoke(CommandSource src, ArgumentFrame arguments) throws CommandException {
+            if (async) {
+                // The bound frame is reused by the main thread, the worker needs its own copy.
+                return dispatcher.dispatch(src, invoker, arguments.copy(), permits, timeout);
+            }
+            try {
+                return call(src, arguments);
+            } catch (AllElement.ParseFailure e) {
+                throw e.exception;
+            } catch (Throwable t) {
+                if (stats != null) {
+                    stats.exception();
+                }
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                t.printStackTrace();
+            }
+            return CommandResult.empty();
+        }
+
+        @Override
+        CommandCallable base() {
+            CommandSpec spec = build();
+            if (compiled && !(this instanceof ClassCommandTree)) {
+                return new CompiledCommandCallable(spec, CompiledParser.compile(parameterTypes, arguments, deferred()), this);
+            }
+            return throttled(spec);
+        }
+
+        /**
+         * Turns away sources which have to wait before the spec parses their arguments, if this
+         * command has throttles.
+         */
+        CommandCallable throttled(CommandSpec spec) {
+            return throttles.isEmpty() ? spec : new ThrottledCommandCallable(spec, this);
+        }
+
         @Override
         CommandSpec build() {
             CommandSpec.Builder builder = CommandSpec.builder();
             builder.executor(executor());
-            if (!permission().isEmpty()) {
-                builder.permission(permission());
+            if (!description.isEmpty()) {
+                builder.description(Text.of(description));
             }
-            CommandElement[] commandElements = new CommandElement[arguments.size()];
-            for (int i = 0; i < arguments.size(); i++) {
-                commandElements[i] = arguments.get(i).commandElement;
+            if (!permission().isEmpty() && permissions == null) {
+                builder.permission(permission());
             }
-            builder.arguments(commandElements);
+            builder.arguments(elements());
             return builder.build();
         }
 
@@ -411,46 +1935,341 @@ public class Commander {
 
     private static class ClassCommandTree extends MethodCommandTree {
 
-        ClassCommandTree(CommandTree parent, Object obj, Method method) {
-            super(parent, obj, method);
+        ClassCommandTree(CommandTree parent, CommandInvoker invoker, Class<?>[] parameterTypes) {
+            super(parent, invoker, parameterTypes);
         }
 
         @Override
         CommandSpec build() {
             CommandSpec.Builder builder = CommandSpec.builder();
-            if (!permission().isEmpty()) {
+            if (!description.isEmpty()) {
+                builder.description(Text.of(description));
+            }
+            if (!permission().isEmpty() && permissions == null) {
                 builder.permission(permission());
             }
-            if (method != null) {
+            if (invoker != null) {
                 builder.executor(executor());
-                CommandElement[] commandElements = new CommandElement[arguments.size()];
-                for (int i = 0; i < arguments.size(); i++) {
-                    commandElements[i] = arguments.get(i).commandElement;
-                }
-                builder.arguments(commandElements);
+                builder.arguments(elements());
             }
             for (CommandTree tree : children()) {
-                builder.child(tree.build(), tree.aliases);
+                builder.child(tree.lazy(), tree.aliases);
             }
             return builder.build();
         }
+
+        @Override
+        CommandCallable base() {
+            CommandCallable callable = throttled(build());
+            return children().isEmpty() ? callable : new DispatchingCallable(callable, this);
+        }
+    }
+
+    /**
+     * Resolves the child of a command through the alias index of its tree, instead of the child
+     * mapping of its {@link CommandSpec}, and suggests close aliases for an unknown subcommand.
+     *
+     * <p>The spec still lists the children in its usage and help, and handles the input that does
+     * not start with the alias of a child.</p>
+     */
+    private static class DispatchingCallable extends ForwardingCommandCallable {
+
+        private static final int SUGGESTIONS = 3;
+
+        private final MethodCommandTree tree;
+        private final AliasIndex<CommandTree> children;
+
+        DispatchingCallable(CommandCallable callable, MethodCommandTree tree) {
+            super(callable);
+            this.tree = tree;
+            this.children = tree.index();
+        }
+
+        @Override
+        public CommandResult process(CommandSource source, String arguments) throws CommandException {
+            int start = tokenStart(arguments, 0);
+            int end = tokenEnd(arguments, start);
+            CommandTree child = children.get(arguments, start, end);
+            if (child == null) {
+                if (start == end || tree.invoker != null) {
+                    return callable.process(source, arguments);
+                }
+                if (!callable.testPermission(source)) {
+                    throw new CommandPermissionException();
+                }
+                throw new CommandException(unknown(source, arguments.substring(start, end)));
+            }
+            if (!callable.testPermission(source)) {
+                throw new CommandPermissionException();
+            }
+            return child.lazy().process(source, arguments.substring(tokenStart(arguments, end)));
+        }
+
+        @Override
+        public List<String> getSuggestions(CommandSource source, String arguments) throws CommandException {
+            int start = tokenStart(arguments, 0);
+            int end = tokenEnd(arguments, start);
+            if (end == arguments.length()) {
+                if (tree.invoker != null) {
+                    // The arguments of the command itself complete along with the aliases.
+                    return callable.getSuggestions(source, arguments);
+                }
+                if (!callable.testPermission(source)) {
+                    return Collections.emptyList();
+                }
+                List<String> suggestions = new ArrayList<String>();
+                for (String alias : children.complete(arguments.substring(start))) {
+                    if (children.get(alias).lazy().testPermission(source)) {
+                        suggestions.add(alias);
+                    }
+                }
+                return suggestions;
+            }
+            CommandTree child = children.get(arguments, start, end);
+            if (child == null) {
+                return tree.invoker != null ? callable.getSuggestions(source, arguments) : Collections.<String>emptyList();
+            }
+            if (!callable.testPermission(source)) {
+                return Collections.emptyList();
+            }
+            return child.lazy().getSuggestions(source, arguments.substring(tokenStart(arguments, end)));
+        }
+
+        private Text unknown(CommandSource source, String input) {
+            Set<String> candidates = new LinkedHashSet<String>(children.complete(input));
+            candidates.addAll(children.suggest(input, SUGGESTIONS));
+            List<String> suggestions = new ArrayList<String>(SUGGESTIONS);
+            for (String candidate : candidates) {
+                if (suggestions.size() == SUGGESTIONS) {
+                    break;
+                }
+                if (children.get(candidate).lazy().testPermission(source)) {
+                    suggestions.add(candidate);
+                }
+            }
+            if (suggestions.isEmpty()) {
+                return Text.of("Input command " + input + " was not a valid subcommand!");
+            }
+            return Text.of("Input command " + input + " was not a valid subcommand! Did you mean "
+                    + String.join(", ", suggestions) + "?");
+        }
+
+    }
+
+    /**
+     * Hands the commands run through a root command to the {@link TrafficRecorder}, if there is one.
+     */
+    private class RecordingCallable extends ForwardingCommandCallable {
+
+        private final CommandTree tree;
+
+        RecordingCallable(CommandCallable callable, CommandTree tree) {
+            super(callable);
+            this.tree = tree;
+        }
+
+        @Override
+        public CommandResult process(CommandSource source, String arguments) throws CommandException {
+            TrafficRecorder recorder = trafficRecorder;
+            if (recorder == null) {
+                return callable.process(source, arguments);
+            }
+            long start = System.nanoTime();
+            TrafficLog.Outcome outcome = TrafficLog.Outcome.ERROR;
+            try {
+                CommandResult result = callable.process(source, arguments);
+                outcome = TrafficLog.Outcome.SUCCESS;
+                return result;
+            } catch (ArgumentParseException e) {
+                outcome = TrafficLog.Outcome.INVALID_ARGUMENTS;
+                throw e;
+            } catch (CommandException e) {
+                outcome = TrafficLog.Outcome.FAILURE;
+                throw e;
+            } finally {
+                recorder.record(tree, source, arguments, start, System.nanoTime() - start, outcome);
+            }
+        }
+
+    }
+
+    /**
+     * A parsed line of a script.
+     */
+    private static final class Invocation {
+
+        private final MethodCommandTree tree;
+        private final ArgumentFrame arguments;
+        private final int number;
+        private final String line;
+
+        Invocation(MethodCommandTree tree, ArgumentFrame arguments, int number, String line) {
+            this.tree = tree;
+            this.arguments = arguments;
+            this.number = number;
+            this.line = line;
+        }
+
+    }
+
+    /**
+     * A registered root command.
+     */
+    private static final class Root {
+
+        private final String owner;
+        private final CommandTree tree;
+        private final CommandMapping mapping;
+
+        Root(String owner, CommandTree tree, CommandMapping mapping) {
+            this.owner = owner;
+            this.tree = tree;
+            this.mapping = mapping;
+        }
+
+    }
+
+    /**
+     * A child command of which the {@link CommandSpec} is only built when it is first used.
+     */
+    private static class LazyCommandCallable implements CommandCallable {
+
+        private final CommandTree tree;
+        private volatile CommandCallable callable;
+
+        LazyCommandCallable(CommandTree tree) {
+            this.tree = tree;
+        }
+
+        private CommandCallable callable() {
+            CommandCallable callable = this.callable;
+            if (callable == null) {
+                synchronized (this) {
+                    callable = this.callable;
+                    if (callable == null) {
+                        this.callable = callable = tree.callable();
+                    }
+                }
+            }
+            return callable;
+        }
+
+        @Override
+        public CommandResult process(CommandSource source, String arguments) throws CommandException {
+            return callable().process(source, arguments);
+        }
+
+        @Override
+        public List<String> getSuggestions(CommandSource source, String arguments) throws CommandException {
+            return callable().getSuggestions(source, arguments);
+        }
+
+        @Override
+        public boolean testPermission(CommandSource source) {
+            // Listing the children of a command checks each of them, which should not build them.
+            String permission = tree.permission();
+            if (permission.isEmpty()) {
+                return true;
+            }
+            return tree.permissions != null ? tree.permissions.hasPermission(source, permission) : source.hasPermission(permission);
+        }
+
+        @Override
+        public java.util.Optional<? extends Text> getShortDescription(CommandSource source) {
+            return callable().getShortDescription(source);
+        }
+
+        @Override
+        public java.util.Optional<? extends Text> getHelp(CommandSource source) {
+            return callable().getHelp(source);
+        }
+
+        @Override
+        public Text getUsage(CommandSource source) {
+            return callable().getUsage(source);
+        }
+
+    }
+
+    /**
+     * A command which parses its arguments with a {@link CompiledParser}, and only falls back to
+     * its {@link CommandSpec} for input the parser leaves to Sponge.
+     */
+    private static class CompiledCommandCallable extends ForwardingCommandCallable {
+
+        private final CommandSpec spec;
+        private final CompiledParser parser;
+        private final MethodCommandTree tree;
+
+        CompiledCommandCallable(CommandSpec spec, CompiledParser parser, MethodCommandTree tree) {
+            super(spec);
+            this.spec = spec;
+            this.parser = parser;
+            this.tree = tree;
+        }
+
+        @Override
+        public CommandResult process(CommandSource source, String arguments) throws CommandException {
+            spec.checkPermission(source);
+            tree.checkThrottle(source);
+            ArgumentFrame values;
+            try {
+                values = parser.parse(source, arguments);
+            } catch (AllElement.ParseFailure e) {
+                throw e.exception;
+            }
+            if (values == null) {
+                return spec.process(source, arguments);
+            }
+            try {
+                tree.throttle(source);
+                return tree.execute(source, values);
+            } finally {
+                parser.release(values);
+            }
+        }
+
+    }
+
+    /**
+     * A command of which the throttles are checked before its {@link CommandSpec} parses the
+     * arguments, so a source which has to wait does not pay for parsing. The use itself is only
+     * taken once the arguments are parsed, by the executor.
+     */
+    private static class ThrottledCommandCallable extends ForwardingCommandCallable {
+
+        private final MethodCommandTree tree;
+
+        ThrottledCommandCallable(CommandCallable callable, MethodCommandTree tree) {
+            super(callable);
+            this.tree = tree;
+        }
+
+        @Override
+        public CommandResult process(CommandSource source, String arguments) throws CommandException {
+            // The spec checks the permission first thing, a source which never had it has no bucket to wait for.
+            tree.checkThrottle(source);
+            return callable.process(source, arguments);
+        }
+
     }
 
     private static class CurrentChoicesCommandElement extends CommandElement {
-        private final Map<String, ?> choices;
-        private final boolean choicesInUsage;
+        private final ChoiceIndex index;
+        private final int limit;
 
-        private CurrentChoicesCommandElement(@Nullable Text key, Map<String, ?> choices, boolean choicesInUsage) {
+        private CurrentChoicesCommandElement(@Nullable Text key, ChoiceIndex index, int limit) {
             super(key);
-            this.choices = choices;
-            this.choicesInUsage = choicesInUsage;
+            this.index = index;
+            this.limit = limit;
         }
 
         @Override
         protected Object parseValue(CommandSource source, CommandArgs args) throws ArgumentParseException {
-            Object value = this.choices.get(args.next());
+            String input = args.next();
+            Object value = this.index.find(input);
             if (value == null) {
-                throw args.createError(t("Argument was not a valid choice. Valid choices: %s", this.choices.keySet().toString()));
+                throw args.createError(t("Argument was not a valid choice. Valid choices: %s", this.index.keys().toString()));
             }
             return value;
         }
@@ -458,25 +2277,7 @@ public class Commander {
         @Override
         public List<String> complete(CommandSource src, CommandArgs args, CommandContext context) {
             final String prefix = args.nextIfPresent().orElse("");
-            return this.choices.keySet().stream().filter(new StartsWithPredicate(prefix)).collect(GuavaCollectors.<String>toImmutableList());
-        }
-
-        @Override
-        public Text getUsage(CommandSource commander) {
-            if (this.choicesInUsage) {
-                final Text.Builder build = Text.builder();
-                build.append(CommandMessageFormatting.LT_TEXT);
-                for (Iterator<String> it = this.choices.keySet().iterator(); it.hasNext(); ) {
-                    build.append(Text.of(it.next()));
-                    if (it.hasNext()) {
-                        build.append(CommandMessageFormatting.PIPE_TEXT);
-                    }
-                }
-                build.append(CommandMessageFormatting.GT_TEXT);
-                return build.build();
-            } else {
-                return super.getUsage(commander);
-            }
+            return this.index.complete(prefix, this.limit);
         }
     }
 
@@ -0,0 +1,629 @@
+package be.rafvdl.commander;
+
+import com.flowpowered.math.vector.Vector3d;
+import com.google.common.base.Defaults;
+import org.spongepowered.api.CatalogType;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.ArgumentParseException;
+import org.spongepowered.api.command.args.CommandArgs;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.command.args.parsing.SingleArg;
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Parses the raw arguments of a command method straight into its argument array.
+ *
+ * <p>The parameter list of a method is compiled into a list of steps once, when the command is
+ * registered. Parsing splits the input into token offsets in a single pass and lets every step
+ * read its tokens as slices of the raw string, so the common parameter types are parsed without
+ * going through a {@link CommandContext}, and numbers straight into the primitive lane of the
+ * {@link ArgumentFrame}, without boxing them. A step only handles the input it is certain about; for
+ * anything else, and for types it does not know, the argument's own {@link CommandElement} parses
+ * the remaining tokens, so errors and edge cases stay exactly those of Sponge.</p>
+ */
+final class CompiledParser {
+
+    private static final Map<String, Boolean> BOOLEANS = new HashMap<String, Boolean>();
+
+    static {
+        for (String value : new String[]{"true", "t", "yes", "y", "verymuch"}) {
+            BOOLEANS.put(value, true);
+        }
+        for (String value : new String[]{"false", "f", "no", "n", "notatall"}) {
+            BOOLEANS.put(value, false);
+        }
+    }
+
+    private final Step[] steps;
+    @Nullable private final FlagTable flags;
+    private final int size;
+    private final ThreadLocal<State> states = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State(size);
+        }
+    };
+
+    private CompiledParser(Step[] steps, @Nullable FlagTable flags) {
+        this.steps = steps;
+        this.flags = flags;
+        this.size = steps.length + 1;
+    }
+
+    /**
+     * Compiles the parser of a method.
+     *
+     * @param parameters The parameter types, of which the first is the {@code CommandSource}
+     * @param arguments  The arguments of the remaining parameters
+     * @param eager      Whether to parse the values of {@link be.rafvdl.commander.argument.All}
+     *                   parameters right away, for a method that is not invoked right away
+     * @return The parser
+     */
+    static CompiledParser compile(Class<?>[] parameters, List<Commander.Argument> arguments, boolean eager) {
+        checkArgument(parameters.length == arguments.size() + 1, "Expected " + arguments.size() + " arguments, got " + (parameters.length - 1));
+
+        FlagTable flags = FlagTable.of(arguments);
+        Step[] steps = new Step[arguments.size()];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = step(parameters[i + 1], arguments.get(i), eager);
+        }
+        if (flags != null) {
+            for (FlagTable.Flag flag : flags.flags) {
+                steps[flag.argument] = new FlagStep(arguments.get(flag.argument), flag);
+            }
+        }
+        return new CompiledParser(steps, flags);
+    }
+
+    private static Step step(Class<?> type, Commander.Argument argument, boolean eager) {
+        CommandRegistrar.Parameter parameter = argument.parameter;
+        if (argument.commandElement == null) {
+            return new SkipStep(argument, type);
+        }
+        if (parameter == null || parameter.choices != null || argument.collection) {
+            return new DelegateStep(argument, type, eager);
+        }
+        if (type.equals(Vector3d.class)) {
+            return new Vector3dStep(argument, type);
+        }
+        if (type.isEnum() && !CatalogType.class.isAssignableFrom(type)) {
+            return new EnumStep(argument, type);
+        }
+        if (NumberElement.supports(type)) {
+            return new NumberStep(argument, type);
+        }
+        if (type.equals(boolean.class)) {
+            return parameter.literal != null ? new LiteralStep(argument, type) : new BooleanStep(argument, type);
+        }
+        if (type.equals(String.class)) {
+            return parameter.conjoin ? new ConjoinStep(argument, type) : new StringStep(argument, type);
+        }
+        return new DelegateStep(argument, type, eager);
+    }
+
+    /**
+     * Parses the raw arguments to an argument frame.
+     *
+     * <p>The returned frame must be handed back through {@link #release(ArgumentFrame)} once the
+     * method has been invoked.</p>
+     *
+     * @param src The source
+     * @param raw The raw arguments
+     * @return The argument frame, or null if the input uses quotes or escapes, which are left to
+     *         Sponge's tokenizer, or contains an invalid flag, which is left to Sponge to report
+     * @throws ArgumentParseException If the arguments are invalid
+     */
+    @Nullable
+    ArgumentFrame parse(CommandSource src, String raw) throws ArgumentParseException {
+        State state = states.get();
+        if (state.busy) {
+            // A command dispatching another command on the same thread.
+            state = new State(size);
+        }
+        if (!state.tokenize(raw)) {
+            return null;
+        }
+        ArgumentFrame frame = state.frame;
+        if (flags != null && !state.scanFlags(flags)) {
+            frame.clear();
+            return null;
+        }
+        state.busy = true;
+        boolean parsed = false;
+        try {
+            frame.values[0] = src;
+            for (int i = 0; i < steps.length; i++) {
+                steps[i].bind(src, state, i + 1);
+            }
+            if (state.cursor < state.count) {
+                throw state.error(Text.of("Too many arguments!"), state.cursor);
+            }
+            parsed = true;
+            return frame;
+        } finally {
+            if (!parsed) {
+                release(frame);
+            }
+        }
+    }
+
+    /**
+     * Releases an argument frame obtained through {@link #parse(CommandSource, String)}.
+     *
+     * @param frame The argument frame
+     */
+    void release(ArgumentFrame frame) {
+        frame.clear();
+        State state = states.get();
+        if (state.frame == frame) {
+            state.busy = false;
+            state.context = null;
+        }
+    }
+
+    private static final class State {
+
+        private final ArgumentFrame frame;
+        private boolean busy;
+        private String raw;
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private int count;
+        private int cursor;
+        private long present;
+        // Shared by the steps of one invocation which leave their input to an element.
+        @Nullable private CommandContext context;
+
+        State(int size) {
+            this.frame = new ArgumentFrame(size);
+        }
+
+        CommandContext context() {
+            CommandContext context = this.context;
+            if (context == null) {
+                this.context = context = new CommandContext();
+            }
+            return context;
+        }
+
+        boolean tokenize(String raw) {
+            this.raw = raw;
+            this.context = null;
+            this.count = 0;
+            this.cursor = 0;
+            int length = raw.length();
+            int i = 0;
+            while (i < length) {
+                char c = raw.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < length && !Character.isWhitespace(c = raw.charAt(i))) {
+                    if (c == '"' || c == '\'' || c == '\\') {
+                        return false;
+                    }
+                    i++;
+                }
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                starts[count] = start;
+                ends[count] = i;
+                count++;
+            }
+            return true;
+        }
+
+        /**
+         * Resolves all flags in one pass, binds their values and removes their tokens.
+         *
+         * @param table The flags of the command
+         * @return false if a flag is invalid
+         */
+        boolean scanFlags(FlagTable table) {
+            present = 0;
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int start = starts[i];
+                int end = ends[i];
+                long flags = 0;
+                if (end - start >= 2 && raw.charAt(start) == '-') {
+                    if (raw.charAt(start + 1) == '-') {
+                        int separator = raw.indexOf('=', start);
+                        int nameEnd = separator >= 0 && separator < end ? separator : end;
+                        FlagTable.Flag flag = table.find(raw, start + 2, nameEnd);
+                        if (flag != null && !flag.isShort && (flag.valued || nameEnd == end)) {
+                            if ((present & (1L << flag.index)) != 0) {
+                                return false;
+                            }
+                            if (flag.valued) {
+                                boolean bound;
+                                if (nameEnd < end) {
+                                    bound = flag.bind(raw, nameEnd + 1, end, frame, flag.argument + 1);
+                                } else if (i + 1 < count) {
+                                    i++;
+                                    bound = flag.bind(raw, starts[i], ends[i], frame, flag.argument + 1);
+                                } else {
+                                    return false;
+                                }
+                                if (!bound) {
+                                    return false;
+                                }
+                            }
+                            flags = 1L << flag.index;
+                        }
+                    } else {
+                        for (int j = start + 1; j < end; j++) {
+                            FlagTable.Flag flag = table.find(raw, j, j + 1);
+                            if (flag == null || !flag.isShort) {
+                                flags = 0;
+                                break;
+                            }
+                            flags |= 1L << flag.index;
+                        }
+                    }
+                }
+                if (flags == 0) {
+                    starts[kept] = start;
+                    ends[kept] = end;
+                    kept++;
+                } else {
+                    present |= flags;
+                }
+            }
+            count = kept;
+            return true;
+        }
+
+        int remaining() {
+            return count - cursor;
+        }
+
+        String token(int index) {
+            return raw.substring(starts[index], ends[index]);
+        }
+
+        boolean matches(int index, String value) {
+            int length = ends[index] - starts[index];
+            return length == value.length() && raw.regionMatches(true, starts[index], value, 0, length);
+        }
+
+        List<SingleArg> remainingArgs() {
+            List<SingleArg> args = new ArrayList<SingleArg>(count - cursor);
+            for (int i = cursor; i < count; i++) {
+                // Sponge's tokenizer reports inclusive end indices.
+                args.add(new SingleArg(token(i), starts[i], ends[i] - 1));
+            }
+            return args;
+        }
+
+        ArgumentParseException error(Text message, int index) {
+            return new ArgumentParseException(message, raw, index < count ? starts[index] : 0);
+        }
+
+    }
+
+    private static abstract class Step {
+
+        final String key;
+        final Class<?> type;
+        final boolean optional;
+        final String permission;
+        final PermissionCache permissions;
+        final CommandElement element;
+        final Object defaultValue;
+
+        Step(Commander.Argument argument, Class<?> type) {
+            this.key = argument.key;
+            this.type = type;
+            this.optional = argument.parameter != null && argument.parameter.optional;
+            this.permission = argument.permission;
+            this.permissions = argument.permissions;
+            this.element = argument.commandElement;
+            this.defaultValue = type.isPrimitive() ? Defaults.defaultValue(type) : null;
+        }
+
+        /**
+         * Parses the value of the parameter into its lane of the frame.
+         *
+         * @param src   The source
+         * @param state The parse state
+         * @param index The index of the parameter
+         * @throws ArgumentParseException If the argument is invalid
+         */
+        void bind(CommandSource src, State state, int index) throws ArgumentParseException {
+            if (permission != null && !(permissions != null ? permissions.hasPermission(src, permission) : src.hasPermission(permission))) {
+                state.frame.set(index, type, delegate(src, state));
+            } else if (state.remaining() == 0) {
+                state.frame.set(index, type, optional ? defaultValue : delegate(src, state));
+            } else if (!bindNative(state, index)) {
+                state.frame.set(index, type, delegate(src, state));
+            }
+        }
+
+        /**
+         * Parses the value from the tokens at the cursor into the frame and advances it.
+         *
+         * @param state The parse state, with at least one token left
+         * @param index The index of the parameter
+         * @return false to leave the input to the element
+         */
+        boolean bindNative(State state, int index) {
+            Object value = parseNative(state);
+            if (value == null) {
+                return false;
+            }
+            state.frame.values[index] = value;
+            return true;
+        }
+
+        /**
+         * Parses the value from the tokens at the cursor and advances it.
+         *
+         * @param state The parse state, with at least one token left
+         * @return The value, or null to leave the input to the element
+         */
+        @Nullable
+        Object parseNative(State state) {
+            return null;
+        }
+
+        Object delegate(CommandSource src, State state) throws ArgumentParseException {
+            CommandArgs args = new CommandArgs(state.raw, state.remainingArgs());
+            CommandContext context = state.context();
+            element.parse(src, args, context);
+            int left = 0;
+            while (args.hasNext()) {
+                args.next();
+                left++;
+            }
+            state.cursor = state.count - left;
+            return extract(context);
+        }
+
+        Object extract(CommandContext context) {
+            Object value = context.getOne(key).orElse(null);
+            return value != null ? value : defaultValue;
+        }
+
+    }
+
+    private static final class SkipStep extends Step {
+
+        SkipStep(Commander.Argument argument, Class<?> type) {
+            super(argument, type);
+        }
+
+        @Override
+        void bind(CommandSource src, State state, int index) {
+            state.frame.set(index, type, defaultValue);
+        }
+
+    }
+
+    private static final class FlagStep extends Step {
+
+        private final FlagTable.Flag flag;
+
+        FlagStep(Commander.Argument argument, FlagTable.Flag flag) {
+            super(argument, flag.type);
+            this.flag = flag;
+        }
+
+        @Override
+        void bind(CommandSource src, State state, int index) {
+            if ((state.present & (1L << flag.index)) == 0) {
+                state.frame.set(index, type, defaultValue);
+            } else if (!flag.valued) {
+                state.frame.values[index] = Boolean.TRUE;
+            }
+            // The value of a valued flag is already bound, by scanFlags.
+        }
+
+    }
+
+    private static final class DelegateStep extends Step {
+
+        private final boolean collection;
+        private final boolean eager;
+
+        DelegateStep(Commander.Argument argument, Class<?> type, boolean eager) {
+            super(argument, type);
+            this.collection = argument.collection;
+            this.eager = eager;
+        }
+
+        @Override
+        void bind(CommandSource src, State state, int index) throws ArgumentParseException {
+            state.frame.set(index, type, delegate(src, state));
+        }
+
+        @Override
+        Object extract(CommandContext context) {
+            return collection ? AllElement.bind(context.getOne(key).orElse(null), type, eager) : super.extract(context);
+        }
+
+    }
+
+    private static final class StringStep extends Step {
+
+        StringStep(Commander.Argument argument, Class<?> type) {
+            super(argument, type);
+        }
+
+        @Override
+        Object parseNative(State state) {
+            return state.token(state.cursor++);
+        }
+
+    }
+
+    private static final class ConjoinStep extends Step {
+
+        ConjoinStep(Commander.Argument argument, Class<?> type) {
+            super(argument, type);
+        }
+
+        @Override
+        Object parseNative(State state) {
+            int first = state.cursor;
+            int last = state.count - 1;
+            state.cursor = state.count;
+            boolean singleSpaced = true;
+            for (int i = first; i < last && singleSpaced; i++) {
+                singleSpaced = state.ends[i] + 1 == state.starts[i + 1] && state.raw.charAt(state.ends[i]) == ' ';
+            }
+            if (singleSpaced) {
+                return state.raw.substring(state.starts[first], state.ends[last]);
+            }
+            StringBuilder builder = new StringBuilder(state.ends[last] - state.starts[first]);
+            for (int i = first; i <= last; i++) {
+                if (i > first) {
+                    builder.append(' ');
+                }
+                builder.append(state.raw, state.starts[i], state.ends[i]);
+            }
+            return builder.toString();
+        }
+
+    }
+
+    private static final class NumberStep extends Step {
+
+        private final double min;
+        private final double max;
+
+        NumberStep(Commander.Argument argument, Class<?> type) {
+            super(argument, type);
+            this.min = argument.parameter.min;
+            this.max = argument.parameter.max;
+        }
+
+        @Override
+        boolean bindNative(State state, int index) {
+            long[] lane = state.frame.primitives;
+            if (!NumberElement.parse(type, state.raw, state.starts[state.cursor], state.ends[state.cursor], lane, index)
+                    || !NumberElement.inRange(type, lane[index], min, max)) {
+                return false;
+            }
+            state.cursor++;
+            return true;
+        }
+
+    }
+
+    private static final class BooleanStep extends Step {
+
+        BooleanStep(Commander.Argument argument, Class<?> type) {
+            super(argument, type);
+        }
+
+        @Override
+        Object parseNative(State state) {
+            Boolean value = BOOLEANS.get(state.token(state.cursor));
+            if (value != null) {
+                state.cursor++;
+            }
+            return value;
+        }
+
+    }
+
+    private static final class LiteralStep extends Step {
+
+        private final String[] literal;
+
+        LiteralStep(Commander.Argument argument, Class<?> type) {
+            super(argument, type);
+            this.literal = argument.parameter.literal;
+        }
+
+        @Override
+        Object parseNative(State state) {
+            if (state.remaining() < literal.length) {
+                return null;
+            }
+            for (int i = 0; i < literal.length; i++) {
+                if (!state.matches(state.cursor + i, literal[i])) {
+                    return null;
+                }
+            }
+            state.cursor += literal.length;
+            return true;
+        }
+
+    }
+
+    private static final class EnumStep extends Step {
+
+        private final Enum<?>[] constants;
+
+        EnumStep(Commander.Argument argument, Class<?> type) {
+            super(argument, type);
+            this.constants = (Enum<?>[]) type.getEnumConstants();
+        }
+
+        @Override
+        Object parseNative(State state) {
+            for (Enum<?> constant : constants) {
+                if (state.matches(state.cursor, constant.name())) {
+                    state.cursor++;
+                    return constant;
+                }
+            }
+            return null;
+        }
+
+    }
+
+    private static final class Vector3dStep extends Step {
+
+        Vector3dStep(Commander.Argument argument, Class<?> type) {
+            super(argument, type);
+        }
+
+        @Override
+        Object parseNative(State state) {
+            String[] components;
+            int used;
+            String first = state.token(state.cursor);
+            if (first.indexOf(',') >= 0) {
+                components = first.split(",");
+                used = 1;
+            } else if (state.remaining() >= 3) {
+                components = new String[]{first, state.token(state.cursor + 1), state.token(state.cursor + 2)};
+                used = 3;
+            } else {
+                return null;
+            }
+            if (components.length != 3) {
+                return null;
+            }
+            double[] coordinates = new double[3];
+            for (int i = 0; i < 3; i++) {
+                // Relative coordinates need the location of the source.
+                if (components[i].startsWith("~")) {
+                    return null;
+                }
+                try {
+                    coordinates[i] = Double.parseDouble(components[i]);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            state.cursor += used;
+            return new Vector3d(coordinates[0], coordinates[1], coordinates[2]);
+        }
+
+    }
+
+}
@@ -0,0 +1,245 @@
+package be.rafvdl.commander;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Defines a {@link CommandInvoker} class per method handle, which holds the handle in a static
+ * final field.
+ *
+ * <p>The JIT only inlines through {@link MethodHandle#invokeExact} when the handle is a constant,
+ * which a field of an invoker instance is not. A static final field is, so a call through such a
+ * class compiles down to a direct call of the command method. Every class consists of the same
+ * few instructions, it is written here by hand rather than through a bytecode library, and
+ * defined in this package so that it can extend {@link CommandInvoker}.</p>
+ */
+final class ConstantInvokers {
+
+    private static final String PACKAGE = "be/rafvdl/commander/";
+    private static final String INVOKER = PACKAGE + "CommandInvoker";
+    private static final String FACTORY = PACKAGE + "ConstantInvokers";
+    private static final String HANDLE_TYPE = "Ljava/lang/invoke/MethodHandle;";
+    private static final String INVOKE_DESCRIPTOR = "([Ljava/lang/Object;[J)Ljava/lang/Object;";
+
+    private static final AtomicInteger ids = new AtomicInteger();
+    // The handles of classes that are defined, but not initialized yet.
+    private static final Map<Integer, MethodHandle> pending = new ConcurrentHashMap<Integer, MethodHandle>();
+
+    private ConstantInvokers() {
+    }
+
+    /**
+     * Defines an invoker which calls a handle.
+     *
+     * @param handle The handle, of the type of {@link CommandInvoker#invoke(Object[], long[])}
+     * @return The invoker, or null if no class can be defined on this JVM
+     */
+    @Nullable
+    static CommandInvoker of(MethodHandle handle) {
+        int id = ids.incrementAndGet();
+        String name = FACTORY + "$" + id;
+        pending.put(id, handle);
+        try {
+            Class<?> clazz = define(name.replace('/', '.'), write(name, id));
+            return (CommandInvoker) clazz.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        } finally {
+            pending.remove(id);
+        }
+    }
+
+    /**
+     * Hands a defined class its handle, called once from its static initializer.
+     *
+     * @param id The id of the class
+     * @return The handle
+     */
+    static MethodHandle handle(int id) {
+        return pending.get(id);
+    }
+
+    private static Class<?> define(String name, byte[] bytes) throws Exception {
+        try {
+            // Java 9 and later define the class next to the lookup class.
+            Method define = MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+            return (Class<?>) define.invoke(MethodHandles.lookup(), bytes);
+        } catch (NoSuchMethodException e) {
+            Method define = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
+            define.setAccessible(true);
+            return (Class<?>) define.invoke(ConstantInvokers.class.getClassLoader(), name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Writes a class of the form
+     *
+     * <pre>
+     * final class ConstantInvokers$id extends CommandInvoker {
+     *     private static final MethodHandle HANDLE = ConstantInvokers.handle(id);
+     *
+     *     Object invoke(Object[] arguments, long[] primitives) {
+     *         return (Object) HANDLE.invokeExact(arguments, primitives);
+     *     }
+     * }
+     * </pre>
+     */
+    private static byte[] write(String name, int id) throws IOException {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(name);
+        int superClass = pool.classRef(INVOKER);
+        int code = pool.utf8("Code");
+        int field = pool.fieldRef(name, "HANDLE", HANDLE_TYPE);
+        int handle = pool.methodRef(FACTORY, "handle", "(I)" + HANDLE_TYPE);
+        int superInit = pool.methodRef(INVOKER, "<init>", "()V");
+        int invokeExact = pool.methodRef("java/lang/invoke/MethodHandle", "invokeExact", INVOKE_DESCRIPTOR);
+        int idConstant = pool.integer(id);
+
+        // The body goes first, as it adds the names of its members to the pool.
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeShort(0x0010 | 0x0020); // final, super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0);
+
+        out.writeShort(1);
+        out.writeShort(0x0002 | 0x0008 | 0x0010); // private static final
+        out.writeShort(pool.utf8("HANDLE"));
+        out.writeShort(pool.utf8(HANDLE_TYPE));
+        out.writeShort(0);
+
+        out.writeShort(3);
+        // Straight-line code needs no stack map frames.
+        method(out, pool, 0x0008, "<clinit>", "()V", code, 1, 0,
+                0x13, idConstant >> 8, idConstant, // ldc_w id
+                0xB8, handle >> 8, handle, // invokestatic ConstantInvokers.handle
+                0xB3, field >> 8, field, // putstatic HANDLE
+                0xB1); // return
+        method(out, pool, 0x0001, "<init>", "()V", code, 1, 1,
+                0x2A, // aload_0
+                0xB7, superInit >> 8, superInit, // invokespecial CommandInvoker.<init>
+                0xB1); // return
+        method(out, pool, 0x0000, "invoke", INVOKE_DESCRIPTOR, code, 3, 3,
+                0xB2, field >> 8, field, // getstatic HANDLE
+                0x2B, // aload_1
+                0x2C, // aload_2
+                0xB6, invokeExact >> 8, invokeExact, // invokevirtual MethodHandle.invokeExact
+                0xB0); // areturn
+
+        out.writeShort(0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(0xCAFEBABE);
+        header.writeShort(0);
+        header.writeShort(52);
+        pool.write(header);
+        body.writeTo(header);
+        header.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void method(DataOutputStream out, ConstantPool pool, int access, String name, String descriptor, int code,
+            int maxStack, int maxLocals, int... instructions) throws IOException {
+        out.writeShort(access);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(code);
+        out.writeInt(12 + instructions.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(instructions.length);
+        for (int instruction : instructions) {
+            out.writeByte(instruction);
+        }
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * The constant pool of a class, which hands out the index of every entry it adds and shares
+     * equal entries.
+     */
+    private static final class ConstantPool {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<String, Integer>();
+        private int count = 1;
+
+        int utf8(String value) throws IOException {
+            Integer index = entries.get("U" + value);
+            if (index == null) {
+                out.writeByte(1);
+                out.writeUTF(value);
+                index = add("U" + value);
+            }
+            return index;
+        }
+
+        int integer(int value) throws IOException {
+            Integer index = entries.get("I" + value);
+            if (index == null) {
+                out.writeByte(3);
+                out.writeInt(value);
+                index = add("I" + value);
+            }
+            return index;
+        }
+
+        int classRef(String name) throws IOException {
+            return reference("C" + name, 7, utf8(name), -1);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) throws IOException {
+            return reference("F" + owner + "." + name + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            return reference("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        private int nameAndType(String name, String descriptor) throws IOException {
+            return reference("N" + name + descriptor, 12, utf8(name), utf8(descriptor));
+        }
+
+        private int reference(String key, int tag, int first, int second) throws IOException {
+            Integer index = entries.get(key);
+            if (index == null) {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second >= 0) {
+                    out.writeShort(second);
+                }
+                index = add(key);
+            }
+            return index;
+        }
+
+        private int add(String key) {
+            int index = count++;
+            entries.put(key, index);
+            return index;
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+
+    }
+
+}
@@ -1,7 +1,42 @@
 package be.rafvdl.commander;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link Command} field holding a {@link ConstructorCommandListener}. Every invocation of
+ * the command constructs an instance of the given class from the parsed arguments, and passes it to
+ * the listener.
+ *
+ * <p>The class must have a single constructor of which the first parameter is a
+ * {@code CommandSource}; its other parameters are the arguments of the command, annotated like the
+ * parameters of a command method.</p>
+ *
+ * <p>When a reset method is named, instances are pooled per thread instead: an instance the
+ * listener is done with is reused by the next invocation on the same thread, which calls the reset
+ * method with the new arguments instead of the constructor. The reset method takes the same
+ * parameters as the constructor, and the listener must not keep the instance after it returns.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
 public @interface ConstructorCommand {
 
     Class<?> value();
 
+    /**
+     * The name of the method that reinitializes a pooled instance.
+     *
+     * @return the name, or an empty string to construct an instance per invocation
+     */
+    String reset() default "";
+
+    /**
+     * The maximum number of idle instances kept per thread.
+     *
+     * @return the size
+     */
+    int poolSize() default 4;
+
 }
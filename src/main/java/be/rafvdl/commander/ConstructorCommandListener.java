@@ -1,6 +1,19 @@
 package be.rafvdl.commander;
 
+import org.spongepowered.api.command.CommandException;
+
+/**
+ * Receives the instances constructed by a {@link ConstructorCommand}.
+ *
+ * @param <E> The type of the instances
+ */
 public interface ConstructorCommandListener<E> {
 
-    void call(E instance);
+    /**
+     * Handles an invocation of the command.
+     *
+     * @param instance The instance, constructed from the arguments of the invocation
+     * @throws CommandException If the command fails, the message is sent to the source
+     */
+    void call(E instance) throws CommandException;
 }
@@ -0,0 +1,120 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.command.CommandResult;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Invokes a {@link ConstructorCommand}: constructs an instance from the arguments and passes it to
+ * the listener.
+ *
+ * <p>With a reset method, every thread keeps a stack of idle instances. An invocation takes an
+ * instance from the stack of its thread and resets it with the arguments, and only constructs one
+ * when the stack is empty, so a command used over and over on the main thread reuses the same
+ * instance. A nested invocation of the same command takes another instance, as the outer one is
+ * off the stack until its listener returns.</p>
+ */
+final class ConstructorInvoker extends CommandInvoker {
+
+    private static final MethodType RESET_TYPE = MethodType.methodType(void.class, Object.class, Object[].class, long[].class);
+
+    private final ConstructorCommandListener<Object> listener;
+    private final CommandInvoker constructor;
+    @Nullable
+    private final CommandRegistrar.Resetter reset;
+    private final int poolSize;
+    @Nullable
+    private final ThreadLocal<ArrayDeque<Object>> pool;
+
+    /**
+     * Creates an invoker.
+     *
+     * @param listener    The listener
+     * @param constructor The invoker of the constructor
+     * @param reset       The reset method, or null to construct an instance per invocation
+     * @param poolSize    The maximum number of idle instances per thread
+     */
+    @SuppressWarnings("unchecked")
+    ConstructorInvoker(ConstructorCommandListener<?> listener, CommandInvoker constructor, @Nullable CommandRegistrar.Resetter reset,
+            int poolSize) {
+        checkArgument(reset == null || poolSize > 0, "poolSize must be positive");
+        this.listener = (ConstructorCommandListener<Object>) checkNotNull(listener);
+        this.constructor = checkNotNull(constructor);
+        this.reset = reset;
+        this.poolSize = poolSize;
+        this.pool = reset == null ? null : new ThreadLocal<ArrayDeque<Object>>() {
+            @Override
+            protected ArrayDeque<Object> initialValue() {
+                return new ArrayDeque<Object>();
+            }
+        };
+    }
+
+    @Override
+    Object invoke(Object[] arguments, long[] primitives) throws Throwable {
+        if (pool == null) {
+            listener.call(constructor.invoke(arguments, primitives));
+            return CommandResult.success();
+        }
+        ArrayDeque<Object> idle = pool.get();
+        Object instance = idle.poll();
+        if (instance == null) {
+            instance = constructor.invoke(arguments, primitives);
+        } else {
+            reset.reset(instance, arguments, primitives);
+        }
+        try {
+            listener.call(instance);
+        } finally {
+            if (idle.size() < poolSize) {
+                idle.push(instance);
+            }
+        }
+        return CommandResult.success();
+    }
+
+    /**
+     * Creates the fastest available resetter for the given method.
+     *
+     * @param method The reset method, taking the same parameters as the constructor
+     * @return The resetter
+     */
+    static CommandRegistrar.Resetter resetter(final Method method) {
+        checkNotNull(method);
+        try {
+            method.setAccessible(true);
+            final MethodHandle handle = CommandInvoker.spread(MethodHandles.lookup().unreflect(method), 1).asType(RESET_TYPE);
+            return new CommandRegistrar.Resetter() {
+                @Override
+                public void reset(Object instance, Object[] arguments, long[] primitives) throws Throwable {
+                    handle.invokeExact(instance, arguments, primitives);
+                }
+            };
+        } catch (SecurityException e) {
+            // Fall back to reflection below.
+        } catch (IllegalAccessException e) {
+            // Fall back to reflection below.
+        }
+        final Class<?>[] parameters = method.getParameterTypes();
+        return new CommandRegistrar.Resetter() {
+            @Override
+            public void reset(Object instance, Object[] arguments, long[] primitives) throws Throwable {
+                try {
+                    method.invoke(instance, CommandInvoker.boxed(parameters, arguments, primitives));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,23 @@
+package be.rafvdl.commander;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sets the time a source has to wait before it can use the command again.
+ *
+ * <p>The cooldown is checked once the permission is checked and the arguments are parsed, so a
+ * denied or mistyped command does not start it.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface Cooldown {
+
+    long value();
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+}
@@ -0,0 +1,124 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.ArgumentParseException;
+import org.spongepowered.api.command.args.CommandArgs;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.text.Text;
+
+import java.util.List;
+
+import static org.spongepowered.api.util.SpongeApiTranslationHelper.t;
+
+/**
+ * Parses the flags of a command wherever they appear in the input, then hands the remaining
+ * arguments to the element of the other parameters.
+ *
+ * <p>All flags are resolved in a single pass over the arguments through the command's
+ * {@link FlagTable}. An argument that starts with a dash but does not name a flag, such as a
+ * negative number, is left to the other parameters.</p>
+ */
+final class FlagElement extends CommandElement {
+
+    private final FlagTable table;
+    private final CommandElement element;
+
+    FlagElement(FlagTable table, CommandElement element) {
+        super(null);
+        this.table = table;
+        this.element = element;
+    }
+
+    @Override
+    public void parse(CommandSource source, CommandArgs args, CommandContext context) throws ArgumentParseException {
+        Object start = args.getState();
+        long present = 0;
+        while (args.hasNext()) {
+            String arg = args.next();
+            if (arg.length() < 2 || arg.charAt(0) != '-') {
+                continue;
+            }
+            Object flagStart = args.getState();
+            if (arg.charAt(1) == '-') {
+                int separator = arg.indexOf('=');
+                int end = separator >= 0 ? separator : arg.length();
+                FlagTable.Flag flag = table.find(arg, 2, end);
+                if (flag == null || flag.isShort || (!flag.valued && separator >= 0)) {
+                    continue;
+                }
+                Object value = true;
+                if (flag.valued) {
+                    String input = separator >= 0 ? arg.substring(separator + 1) : args.next();
+                    value = flag.parse(input, 0, input.length());
+                    if (value == null) {
+                        throw args.createError(t("Expected a number for the flag %s, but input '%s' was not", flag.name, input));
+                    }
+                }
+                if ((present & (1L << flag.index)) != 0) {
+                    throw args.createError(t("The flag %s was given more than once", flag.name));
+                }
+                present |= 1L << flag.index;
+                context.putArg(flag.name, value);
+            } else {
+                long flags = shortFlags(arg);
+                if (flags == 0) {
+                    continue;
+                }
+                for (FlagTable.Flag flag : table.flags) {
+                    if ((flags & (1L << flag.index)) != 0 && (present & (1L << flag.index)) == 0) {
+                        context.putArg(flag.name, true);
+                    }
+                }
+                present |= flags;
+            }
+            args.removeArgs(flagStart, args.getState());
+        }
+        args.setState(start);
+        element.parse(source, args, context);
+    }
+
+    /**
+     * Resolves an argument of short flags.
+     *
+     * @return The set of flags, or 0 if any character is not a short flag
+     */
+    private long shortFlags(String arg) {
+        long flags = 0;
+        for (int i = 1; i < arg.length(); i++) {
+            FlagTable.Flag flag = table.find(arg, i, i + 1);
+            if (flag == null || !flag.isShort) {
+                return 0;
+            }
+            flags |= 1L << flag.index;
+        }
+        return flags;
+    }
+
+    @Override
+    protected Object parseValue(CommandSource source, CommandArgs args) throws ArgumentParseException {
+        // Never called, parse is implemented as a whole.
+        return null;
+    }
+
+    @Override
+    public List<String> complete(CommandSource src, CommandArgs args, CommandContext context) {
+        return element.complete(src, args, context);
+    }
+
+    @Override
+    public Text getUsage(CommandSource src) {
+        Text.Builder builder = Text.builder();
+        for (FlagTable.Flag flag : table.flags) {
+            if (flag.isShort) {
+                builder.append(Text.of("[-", flag.name, "] "));
+            } else if (flag.valued) {
+                builder.append(Text.of("[--", flag.name, " <", flag.name, ">] "));
+            } else {
+                builder.append(Text.of("[--", flag.name, "] "));
+            }
+        }
+        return builder.append(element.getUsage(src)).build();
+    }
+
+}
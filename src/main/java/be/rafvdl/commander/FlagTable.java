@@ -0,0 +1,170 @@
+package be.rafvdl.commander;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The {@link be.rafvdl.commander.argument.Flag} parameters of a command, indexed by name.
+ *
+ * <p>The names are placed in a perfect hash table: a seed is searched at registration time for
+ * which every name lands in its own bucket, so looking up a token is one hash over its characters
+ * and one comparison, without creating a substring. A flag is identified by its index in the
+ * table, which is also its bit in the set of flags present in an invocation.</p>
+ *
+ * <p>A boolean flag with a single character name is a short flag, given as {@code -f} and
+ * combinable as {@code -fq}. Any other flag is a long flag, given as {@code --name}, and flags that
+ * are not boolean carry a value, given as {@code --name value} or {@code --name=value}.</p>
+ */
+final class FlagTable {
+
+    /**
+     * The maximum number of flags of a command, the size of the presence bitset.
+     */
+    static final int MAX_FLAGS = 64;
+
+    private static final int MAX_SEEDS = 1024;
+
+    final Flag[] flags;
+    private final Flag[] buckets;
+    private final int seed;
+    private final int mask;
+
+    private FlagTable(Flag[] flags, Flag[] buckets, int seed) {
+        this.flags = flags;
+        this.buckets = buckets;
+        this.seed = seed;
+        this.mask = buckets.length - 1;
+    }
+
+    /**
+     * Builds the flag table of a command.
+     *
+     * @param arguments The arguments of the command
+     * @return The table, or null if the command has no flags
+     */
+    @Nullable
+    static FlagTable of(List<Commander.Argument> arguments) {
+        List<Flag> flags = new ArrayList<Flag>();
+        for (int i = 0; i < arguments.size(); i++) {
+            Commander.Argument argument = arguments.get(i);
+            if (argument.parameter != null && argument.parameter.flag) {
+                flags.add(new Flag(flags.size(), i, argument.key, argument.parameter.type));
+            }
+        }
+        if (flags.isEmpty()) {
+            return null;
+        }
+        checkArgument(flags.size() <= MAX_FLAGS, "A command can have at most " + MAX_FLAGS + " flags");
+
+        for (int size = Integer.highestOneBit(flags.size() * 2 - 1) << 1; ; size <<= 1) {
+            for (int seed = 0; seed < MAX_SEEDS; seed++) {
+                Flag[] buckets = new Flag[size];
+                boolean perfect = true;
+                for (Flag flag : flags) {
+                    int bucket = hash(flag.name, 0, flag.name.length(), seed) & (size - 1);
+                    if (buckets[bucket] != null) {
+                        checkArgument(!buckets[bucket].name.equals(flag.name), "Duplicate flag " + flag.name);
+                        perfect = false;
+                        break;
+                    }
+                    buckets[bucket] = flag;
+                }
+                if (perfect) {
+                    return new FlagTable(flags.toArray(new Flag[flags.size()]), buckets, seed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the flag with the name in the given range of characters.
+     *
+     * @param input The input
+     * @param start The first character of the name
+     * @param end   The end of the name, exclusive
+     * @return The flag, or null if there is none with that name
+     */
+    @Nullable
+    Flag find(String input, int start, int end) {
+        Flag flag = buckets[hash(input, start, end, seed) & mask];
+        if (flag == null || flag.name.length() != end - start || !input.regionMatches(start, flag.name, 0, end - start)) {
+            return null;
+        }
+        return flag;
+    }
+
+    private static int hash(String input, int start, int end, int seed) {
+        int hash = seed * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ input.charAt(i)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    static final class Flag {
+
+        /**
+         * The index of the flag in the table and its bit in the presence set.
+         */
+        final int index;
+
+        /**
+         * The index of the argument of the flag.
+         */
+        final int argument;
+        final String name;
+        final Class<?> type;
+        final boolean isShort;
+        final boolean valued;
+
+        Flag(int index, int argument, String name, Class<?> type) {
+            checkArgument(type == boolean.class || type == String.class || NumberElement.supports(type),
+                    "Flag " + name + " must be a boolean, a String or a number");
+            this.index = index;
+            this.argument = argument;
+            this.name = name;
+            this.type = type;
+            this.valued = type != boolean.class;
+            this.isShort = !valued && name.length() == 1;
+        }
+
+        /**
+         * Parses the value of the flag.
+         *
+         * @param input The input
+         * @param start The first character of the value
+         * @param end   The end of the value, exclusive
+         * @return The value, or null if it is invalid
+         */
+        @Nullable
+        Object parse(String input, int start, int end) {
+            if (type == String.class) {
+                return input.substring(start, end);
+            }
+            return NumberElement.parse(type, input, start, end);
+        }
+
+        /**
+         * Parses the value of the flag into its lane of a frame, without boxing a number.
+         *
+         * @param input The input
+         * @param start The first character of the value
+         * @param end   The end of the value, exclusive
+         * @param frame The frame
+         * @param index The index of the argument of the flag in the frame
+         * @return false if the value is invalid
+         */
+        boolean bind(String input, int start, int end, ArgumentFrame frame, int index) {
+            if (type == String.class) {
+                frame.values[index] = input.substring(start, end);
+                return true;
+            }
+            return NumberElement.parse(type, input, start, end, frame.primitives, index);
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.command.CommandCallable;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.text.Text;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A {@link CommandCallable} which forwards every call to another callable.
+ */
+abstract class ForwardingCommandCallable implements CommandCallable {
+
+    protected final CommandCallable callable;
+
+    ForwardingCommandCallable(CommandCallable callable) {
+        this.callable = callable;
+    }
+
+    @Override
+    public CommandResult process(CommandSource source, String arguments) throws CommandException {
+        return callable.process(source, arguments);
+    }
+
+    @Override
+    public List<String> getSuggestions(CommandSource source, String arguments) throws CommandException {
+        return callable.getSuggestions(source, arguments);
+    }
+
+    @Override
+    public boolean testPermission(CommandSource source) {
+        return callable.testPermission(source);
+    }
+
+    @Override
+    public Optional<? extends Text> getShortDescription(CommandSource source) {
+        return callable.getShortDescription(source);
+    }
+
+    @Override
+    public Optional<? extends Text> getHelp(CommandSource source) {
+        return callable.getHelp(source);
+    }
+
+    @Override
+    public Text getUsage(CommandSource source) {
+        return callable.getUsage(source);
+    }
+
+}
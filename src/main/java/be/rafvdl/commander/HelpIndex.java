@@ -0,0 +1,224 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the help pages of all registered commands and keeps them until the commands or their
+ * {@link be.rafvdl.commander.argument.Choices} change.
+ *
+ * <p>The commands are flattened into help lines once, without their usage. A source sees the
+ * lines of the commands it has permission for, and the usage of a line leaves out the arguments it
+ * has no permission for. The pages of each distinct set of visible lines and arguments are rendered
+ * once and cached, so serving a page is a permission check per line and argument and a lookup
+ * instead of a walk over every command tree.</p>
+ */
+abstract class HelpIndex {
+
+    /**
+     * The number of commands per page.
+     */
+    static final int PAGE_SIZE = 10;
+
+    private static final int MAX_VIEWS = 64;
+
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile Snapshot snapshot;
+
+    /**
+     * Flattens all commands into help lines.
+     *
+     * @return The lines
+     */
+    abstract List<Line> lines();
+
+    /**
+     * Drops all rendered pages.
+     */
+    void invalidate() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Gets a page of the commands the source can use.
+     *
+     * @param src  The source
+     * @param page The page, starting at 1
+     * @return The page, or null if there is no such page
+     */
+    @Nullable
+    Text page(CommandSource src, int page) {
+        List<Text> pages = pages(src);
+        if (page < 1 || page > pages.size()) {
+            return null;
+        }
+        return pages.get(page - 1);
+    }
+
+    /**
+     * Gets the number of pages of the commands the source can use.
+     *
+     * @param src The source
+     * @return The number of pages
+     */
+    int pageCount(CommandSource src) {
+        return pages(src).size();
+    }
+
+    private List<Text> pages(CommandSource src) {
+        int version = this.version.get();
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null || snapshot.version != version) {
+            snapshot = new Snapshot(lines(), version);
+            this.snapshot = snapshot;
+        }
+        // A bit per line, followed by a bit per argument permission of that line, so two sources
+        // share the pages only if they see the same lines with the same usage.
+        BitSet visible = new BitSet(snapshot.bits);
+        int count = 0;
+        for (int i = 0; i < snapshot.lines.size(); i++) {
+            Line line = snapshot.lines.get(i);
+            int bit = snapshot.offsets[i];
+            if (line.test(src)) {
+                visible.set(bit);
+                count++;
+                for (int j = 0; j < line.usagePermissions.length; j++) {
+                    if (line.hasPermission(src, line.usagePermissions[j])) {
+                        visible.set(bit + 1 + j);
+                    }
+                }
+            }
+        }
+        synchronized (snapshot.views) {
+            List<Text> pages = snapshot.views.get(visible);
+            if (pages == null) {
+                pages = render(snapshot, visible, count, src);
+                snapshot.views.put(visible, pages);
+            }
+            return pages;
+        }
+    }
+
+    private static List<Text> render(Snapshot snapshot, BitSet visible, int count, CommandSource src) {
+        int total = Math.max(1, (count + PAGE_SIZE - 1) / PAGE_SIZE);
+        List<Text> pages = new ArrayList<Text>(total);
+        List<Text> page = new ArrayList<Text>(PAGE_SIZE + 1);
+        for (int i = 0; i < snapshot.lines.size(); i++) {
+            if (!visible.get(snapshot.offsets[i])) {
+                continue;
+            }
+            if (page.isEmpty()) {
+                page.add(Text.of("Commands (page " + (pages.size() + 1) + "/" + total + "):"));
+            }
+            page.add(snapshot.lines.get(i).text(src));
+            if (page.size() > PAGE_SIZE) {
+                pages.add(Text.joinWith(Text.NEW_LINE, page));
+                page.clear();
+            }
+        }
+        if (!page.isEmpty() || pages.isEmpty()) {
+            if (page.isEmpty()) {
+                page.add(Text.of("There are no commands you can use."));
+            }
+            pages.add(Text.joinWith(Text.NEW_LINE, page));
+        }
+        return Collections.unmodifiableList(pages);
+    }
+
+    /**
+     * The help line of a command and the permissions needed to see it.
+     */
+    static final class Line {
+
+        private final String path;
+        @Nullable
+        private final CommandElement usage;
+        private final String description;
+        private final String[] permissions;
+        private final String[] usagePermissions;
+        private final PermissionCache cache;
+
+        /**
+         * Creates a line.
+         *
+         * @param path        The aliases leading to the command
+         * @param usage       The element of the arguments of the command, or null
+         * @param description The description, or an empty string
+         * @param permissions      The permissions of the command and all its parents
+         * @param usagePermissions The permissions of the arguments of the command, which decide
+         *                         whether they are in its usage
+         * @param cache            The permission cache of the command, or null
+         */
+        Line(String path, @Nullable CommandElement usage, String description, String[] permissions, String[] usagePermissions,
+                PermissionCache cache) {
+            this.path = path;
+            this.usage = usage;
+            this.description = description;
+            this.permissions = permissions;
+            this.usagePermissions = usagePermissions;
+            this.cache = cache;
+        }
+
+        Text text(CommandSource src) {
+            Text.Builder builder = Text.builder();
+            builder.append(Text.of(path));
+            if (usage != null) {
+                Text text = usage.getUsage(src);
+                if (!text.toPlain().isEmpty()) {
+                    builder.append(Text.of(" "), text);
+                }
+            }
+            if (!description.isEmpty()) {
+                builder.append(Text.of(" - " + description));
+            }
+            return builder.build();
+        }
+
+        boolean test(CommandSource src) {
+            for (String permission : permissions) {
+                if (!hasPermission(src, permission)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean hasPermission(CommandSource src, String permission) {
+            return cache != null ? cache.hasPermission(src, permission) : src.hasPermission(permission);
+        }
+
+    }
+
+    private static final class Snapshot {
+
+        private final List<Line> lines;
+        private final int[] offsets;
+        private final int bits;
+        private final int version;
+        private final Map<BitSet, List<Text>> views = new LinkedHashMap<BitSet, List<Text>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BitSet, List<Text>> eldest) {
+                return size() > MAX_VIEWS;
+            }
+        };
+
+        Snapshot(List<Line> lines, int version) {
+            this.lines = lines;
+            this.offsets = new int[lines.size()];
+            int bits = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                this.offsets[i] = bits;
+                bits += 1 + lines.get(i).usagePermissions.length;
+            }
+            this.bits = bits;
+            this.version = version;
+        }
+
+    }
+
+}
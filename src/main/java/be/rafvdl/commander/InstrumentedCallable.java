@@ -0,0 +1,34 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.command.CommandCallable;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.ArgumentParseException;
+
+/**
+ * Records the {@link CommandStats} of a command around its {@link CommandCallable}.
+ */
+class InstrumentedCallable extends ForwardingCommandCallable {
+
+    private final CommandStats stats;
+
+    InstrumentedCallable(CommandCallable callable, CommandStats stats) {
+        super(callable);
+        this.stats = stats;
+    }
+
+    @Override
+    public CommandResult process(CommandSource source, String arguments) throws CommandException {
+        long start = System.nanoTime();
+        try {
+            return callable.process(source, arguments);
+        } catch (ArgumentParseException e) {
+            stats.parseFailure();
+            throw e;
+        } finally {
+            stats.record(System.nanoTime() - start);
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package be.rafvdl.commander;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free log-linear histogram of latencies in nanoseconds.
+ *
+ * <p>Every power of two is split in {@code 2^SUB_BUCKET_BITS} buckets, which bounds the relative
+ * error of a recorded value to 12.5%, the same trade-off HdrHistogram makes. The counts are striped
+ * over a few arrays by thread, and a stripe is only allocated once a thread records into it, so a
+ * command only ever run from the main thread costs a single array.</p>
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final int STRIPES = 4;
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<AtomicLongArray>(STRIPES);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int stripeIndex = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(stripeIndex);
+        if (stripe == null) {
+            stripes.compareAndSet(stripeIndex, null, new AtomicLongArray(BUCKETS));
+            stripe = stripes.get(stripeIndex);
+        }
+        stripe.getAndIncrement(index(nanos));
+        sum.add(nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    long count() {
+        long count = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                for (int j = 0; j < BUCKETS; j++) {
+                    count += stripe.get(j);
+                }
+            }
+        }
+        return count;
+    }
+
+    double mean() {
+        long count = count();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the latency below which the given percentage of the recorded latencies fall.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The latency in nanoseconds, rounded up to the end of its bucket
+     */
+    long percentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                for (int j = 0; j < BUCKETS; j++) {
+                    long count = stripe.get(j);
+                    counts[j] += count;
+                    total += count;
+                }
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // The last bucket also holds everything beyond it, it has no end to round up to.
+                return i == BUCKETS - 1 ? max.get() : Math.min(lowerBound(i + 1) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.set(i, null);
+        }
+        sum.reset();
+        max.set(0);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+}
@@ -0,0 +1,356 @@
+package be.rafvdl.commander;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A binary index of {@link CommandModel}s on disk, so that unchanged classes are not scanned again
+ * on the next start.
+ *
+ * <p>Every entry is keyed by the name of the registered class and the registration flags, and
+ * holds a hash of the bytecode of the class and all classes nested in it, along with a stamp of the
+ * files that bytecode was loaded from: the size and modification time of the jar, or of the class
+ * files. As long as the stamp matches, the bytecode is not read at all. When it changed, such as
+ * after the plugin was updated, the bytecode is hashed to tell whether the class itself changed.
+ * The file is mapped into memory when the cache is opened; only the index is read up front, a model
+ * is decoded when its class is registered and is still current.</p>
+ */
+final class ModelCache {
+
+    private static final int MAGIC = 0x434D4458;
+    private static final int VERSION = 5;
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private boolean dirty = false;
+
+    ModelCache(Path file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Gets the cached model of a class.
+     *
+     * @param clazz   The class
+     * @param flags   The registration flags
+     * @param version The current version of the class
+     * @return The model, or null if it is missing, stale or unreadable
+     */
+    @Nullable
+    synchronized CommandModel get(Class<?> clazz, int flags, Version version) {
+        String key = key(clazz, flags);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (version.stamp == null || !version.stamp.equals(entry.stamp)) {
+            byte[] hash = version.hash();
+            if (hash == null || !Arrays.equals(entry.hash, hash)) {
+                return null;
+            }
+            // The files changed but the class did not, the next start trusts the new stamp.
+            entry = new Entry(version.stamp, entry.hash, entry.model);
+            entries.put(key, entry);
+            dirty = true;
+        }
+        try {
+            return CommandModel.read(new DataInputStream(new ByteBufferInputStream(entry.model())), clazz.getClassLoader());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (ClassNotFoundException e) {
+            // A class the model refers to is gone, scan again.
+        }
+        return null;
+    }
+
+    /**
+     * Stores the model of a class, to be written by the next {@link #save()}.
+     *
+     * <p>A model with a string that is too long for the cache, such as a description of 64 KiB or
+     * more, is not stored; the class is scanned on every start instead.</p>
+     *
+     * @param clazz   The class
+     * @param flags   The registration flags
+     * @param version The current version of the class
+     * @param model   The model
+     */
+    synchronized void put(Class<?> clazz, int flags, Version version, CommandModel model) {
+        byte[] hash = version.hash();
+        if (hash == null) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            model.write(new DataOutputStream(bytes));
+        } catch (UTFDataFormatException e) {
+            System.err.println("The commands of " + clazz.getName() + " are not cached, as one of their strings is too long.");
+            return;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        entries.put(key(clazz, flags), new Entry(version.stamp, hash, ByteBuffer.wrap(bytes.toByteArray())));
+        dirty = true;
+    }
+
+    /**
+     * Checks whether the index changed since it was loaded or last saved.
+     *
+     * @return true if it changed
+     */
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Writes the index to disk if it changed since it was loaded or last saved.
+     */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue().stamp != null ? entry.getValue().stamp : "");
+                    out.writeShort(entry.getValue().hash.length);
+                    out.write(entry.getValue().hash);
+                    ByteBuffer model = entry.getValue().model();
+                    byte[] bytes = new byte[model.remaining()];
+                    model.get(bytes);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            System.err.println("Could not save the command model cache to " + file + ".");
+            e.printStackTrace();
+        }
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                String stamp = in.readUTF();
+                byte[] hash = new byte[in.readUnsignedShort()];
+                in.readFully(hash);
+                int length = in.readInt();
+                ByteBuffer model = buffer.duplicate();
+                model.limit(buffer.position() + length);
+                buffer.position(buffer.position() + length);
+                entries.put(key, new Entry(stamp.isEmpty() ? null : stamp, hash, model.slice()));
+            }
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt file, start over.
+            System.err.println("The command model cache " + file + " is corrupt and will be rebuilt.");
+            entries.clear();
+        }
+    }
+
+    /**
+     * Gets the version of a class, which only stamps the files of the class until its hash is
+     * needed.
+     *
+     * @param clazz The class
+     * @return The version
+     */
+    static Version version(Class<?> clazz) {
+        String stamp;
+        try {
+            StringBuilder builder = new StringBuilder();
+            // The index stores the stamp as modified UTF-8, which is limited to 65535 bytes.
+            stamp = stamp(clazz, builder) && builder.length() <= 16384 ? builder.toString() : null;
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            stamp = null;
+        }
+        return new Version(clazz, stamp);
+    }
+
+    /**
+     * Appends the size and modification time of the files of a class and all classes nested in it.
+     *
+     * @return false if a class was not loaded from a file
+     */
+    private static boolean stamp(Class<?> clazz, StringBuilder builder) throws IOException, URISyntaxException {
+        String name = clazz.getName();
+        URL url = clazz.getResource(name.substring(name.lastIndexOf('.') + 1) + ".class");
+        if (url == null) {
+            return false;
+        }
+        Path path;
+        boolean jar = url.getProtocol().equals("jar");
+        if (jar) {
+            path = Paths.get(((JarURLConnection) url.openConnection()).getJarFileURL().toURI());
+        } else if (url.getProtocol().equals("file")) {
+            path = Paths.get(url.toURI());
+        } else {
+            return false;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        builder.append(path).append(':').append(attributes.size()).append(':').append(attributes.lastModifiedTime().toMillis()).append(';');
+        if (jar) {
+            // The nested classes are in the same jar.
+            return true;
+        }
+        for (Class<?> nested : clazz.getDeclaredClasses()) {
+            if (!stamp(nested, builder)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the bytecode of a class and all classes nested in it.
+     *
+     * @param clazz The class
+     * @return The hash, or null if the bytecode cannot be read
+     */
+    @Nullable
+    static byte[] hash(Class<?> clazz) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        try {
+            hash(clazz, digest, new byte[8192]);
+        } catch (IOException e) {
+            return null;
+        }
+        return digest.digest();
+    }
+
+    private static void hash(Class<?> clazz, MessageDigest digest, byte[] buffer) throws IOException {
+        String name = clazz.getName();
+        InputStream in = clazz.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class");
+        if (in == null) {
+            throw new FileNotFoundException(name);
+        }
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        for (Class<?> nested : clazz.getDeclaredClasses()) {
+            hash(nested, digest, buffer);
+        }
+    }
+
+    private static String key(Class<?> clazz, int flags) {
+        return clazz.getName() + '#' + flags;
+    }
+
+    /**
+     * The version of the bytecode of a class: the stamp of its files, and its hash computed on
+     * first use.
+     */
+    static final class Version {
+
+        private final Class<?> clazz;
+        @Nullable
+        private final String stamp;
+        private byte[] hash;
+        private boolean hashed;
+
+        Version(Class<?> clazz, @Nullable String stamp) {
+            this.clazz = clazz;
+            this.stamp = stamp;
+        }
+
+        @Nullable
+        byte[] hash() {
+            if (!hashed) {
+                hash = ModelCache.hash(clazz);
+                hashed = true;
+            }
+            return hash;
+        }
+
+    }
+
+    private static final class Entry {
+
+        @Nullable
+        private final String stamp;
+        private final byte[] hash;
+        private final ByteBuffer model;
+
+        Entry(@Nullable String stamp, byte[] hash, ByteBuffer model) {
+            this.stamp = stamp;
+            this.hash = hash;
+            this.model = model;
+        }
+
+        ByteBuffer model() {
+            return model.duplicate();
+        }
+
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+    }
+
+}
@@ -0,0 +1,337 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.ArgumentParseException;
+import org.spongepowered.api.command.args.CommandArgs;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+import static org.spongepowered.api.util.SpongeApiTranslationHelper.t;
+
+/**
+ * A primitive numeric argument, optionally limited by a {@link be.rafvdl.commander.argument.Range}.
+ *
+ * <p>Numbers are read straight from the characters of the input, into the primitive lane of an
+ * {@link ArgumentFrame} when parsed by the {@link CompiledParser}, so they are never boxed. Plain
+ * decimals are converted without going through {@link Double#parseDouble(String)}, which is only
+ * used for the forms the fast path does not cover, such as exponents. Only decimal digits with an
+ * optional point and exponent are numbers: {@code NaN}, {@code Infinity}, hexadecimal and type
+ * suffixes such as {@code 1.5f}, which the JDK accepts, are not, and neither is a value too large
+ * for its type.</p>
+ */
+final class NumberElement extends CommandElement {
+
+    private static final double[] POWERS = new double[23];
+    private static final float[] FLOAT_POWERS = new float[11];
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+    private static final long MAX_EXACT_FLOAT = 1L << 24;
+
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1] * 10;
+        }
+        FLOAT_POWERS[0] = 1;
+        for (int i = 1; i < FLOAT_POWERS.length; i++) {
+            FLOAT_POWERS[i] = FLOAT_POWERS[i - 1] * 10;
+        }
+    }
+
+    private final Class<?> type;
+    private final double min;
+    private final double max;
+
+    NumberElement(@Nullable Text key, Class<?> type, double min, double max) {
+        super(key);
+        this.type = type;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Checks whether the given type is a supported numeric primitive.
+     *
+     * @param type The type
+     * @return true if it is supported
+     */
+    static boolean supports(Class<?> type) {
+        return type == int.class || type == long.class || type == double.class || type == float.class || type == short.class || type == byte.class;
+    }
+
+    @Override
+    protected Object parseValue(CommandSource source, CommandArgs args) throws ArgumentParseException {
+        String input = args.next();
+        long[] bits = new long[1];
+        check(args, input, bits);
+        return ArgumentFrame.box(type, bits[0]);
+    }
+
+    /**
+     * Checks an argument that was just read, without boxing it.
+     *
+     * @param args  The arguments, positioned after the argument
+     * @param input The argument
+     * @param out   A lane of at least one element, which receives the bits of the number
+     * @throws ArgumentParseException If the argument is not a number of the type within the range
+     */
+    void check(CommandArgs args, String input, long[] out) throws ArgumentParseException {
+        if (!parse(type, input, 0, input.length(), out, 0)) {
+            throw args.createError(t("Expected %s, but input '%s' was not", describe(type), input));
+        }
+        if (!inRange(type, out[0], min, max)) {
+            throw args.createError(t("Expected a number between %s and %s, but input '%s' was not", format(min), format(max), input));
+        }
+    }
+
+    @Override
+    public List<String> complete(CommandSource src, CommandArgs args, CommandContext context) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Parses a number of the given type from a range of characters.
+     *
+     * @param type  The primitive type
+     * @param input The input
+     * @param start The first character
+     * @param end   The end of the range, exclusive
+     * @return The number, or null if the characters are not a number of the type
+     */
+    @Nullable
+    static Number parse(Class<?> type, String input, int start, int end) {
+        long[] bits = new long[1];
+        return parse(type, input, start, end, bits, 0) ? ArgumentFrame.box(type, bits[0]) : null;
+    }
+
+    /**
+     * Parses a number of the given type from a range of characters, as the raw bits held in the
+     * primitive lane of an {@link ArgumentFrame}.
+     *
+     * @param type  The primitive type
+     * @param input The input
+     * @param start The first character
+     * @param end   The end of the range, exclusive
+     * @param out   The lane to store the bits in
+     * @param index The index to store the bits at
+     * @return false if the characters are not a number of the type
+     */
+    static boolean parse(Class<?> type, String input, int start, int end, long[] out, int index) {
+        if (type == double.class) {
+            double value = parseDouble(input, start, end);
+            if (Double.isNaN(value)) {
+                return false;
+            }
+            out[index] = Double.doubleToRawLongBits(value);
+            return true;
+        }
+        if (type == float.class) {
+            float value = parseFloat(input, start, end);
+            if (Float.isNaN(value)) {
+                return false;
+            }
+            out[index] = Float.floatToRawIntBits(value);
+            return true;
+        }
+        if (!parseLong(input, start, end, out, index)) {
+            return false;
+        }
+        long number = out[index];
+        if (type == long.class
+                || type == int.class && number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE
+                || type == short.class && number >= Short.MIN_VALUE && number <= Short.MAX_VALUE
+                || type == byte.class && number >= Byte.MIN_VALUE && number <= Byte.MAX_VALUE) {
+            return true;
+        }
+        out[index] = 0;
+        return false;
+    }
+
+    /**
+     * Checks whether a number lies within the given bounds.
+     *
+     * @param value The number
+     * @param min   The lower bound, inclusive
+     * @param max   The upper bound, inclusive
+     * @return true if it does
+     */
+    static boolean inRange(Number value, double min, double max) {
+        if (value instanceof Long) {
+            // Compared as doubles, a long near its limits could slip past a bound.
+            long number = value.longValue();
+            return number >= (long) Math.ceil(min) && number <= (long) Math.floor(max);
+        }
+        double number = value.doubleValue();
+        return number >= min && number <= max;
+    }
+
+    /**
+     * Checks whether the raw bits of a number lie within the given bounds.
+     *
+     * @param type  The primitive type
+     * @param bits  The bits, as stored by {@link #parse(Class, String, int, int, long[], int)}
+     * @param min   The lower bound, inclusive
+     * @param max   The upper bound, inclusive
+     * @return true if they do
+     */
+    static boolean inRange(Class<?> type, long bits, double min, double max) {
+        if (type == double.class || type == float.class) {
+            double number = type == double.class ? Double.longBitsToDouble(bits) : Float.intBitsToFloat((int) bits);
+            return number >= min && number <= max;
+        }
+        return bits >= (long) Math.ceil(min) && bits <= (long) Math.floor(max);
+    }
+
+    private static boolean parseLong(String input, int start, int end, long[] out, int index) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (input.charAt(i) == '-' || input.charAt(i) == '+')) {
+            negative = input.charAt(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            return false;
+        }
+        // Accumulated negatively, so that Long.MIN_VALUE fits.
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = input.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                return false;
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                return false;
+            }
+            value = -value;
+        }
+        out[index] = value;
+        return true;
+    }
+
+    /**
+     * @return The value, or NaN if the input is not a number or is too large for a double
+     */
+    private static double parseDouble(String input, int start, int end) {
+        double value = decimal(input, start, end, false);
+        if (!Double.isNaN(value) || !isDecimal(input, start, end)) {
+            return value;
+        }
+        value = Double.parseDouble(input.substring(start, end));
+        return Double.isInfinite(value) ? Double.NaN : value;
+    }
+
+    /**
+     * @return The value, or NaN if the input is not a number or is too large for a float
+     */
+    private static float parseFloat(String input, int start, int end) {
+        double value = decimal(input, start, end, true);
+        if (!Double.isNaN(value) || !isDecimal(input, start, end)) {
+            return (float) value;
+        }
+        float single = Float.parseFloat(input.substring(start, end));
+        return Float.isInfinite(single) ? Float.NaN : single;
+    }
+
+    /**
+     * Checks whether a range of characters is a decimal number with an optional point and
+     * exponent, the only form {@link Double#parseDouble(String)} is trusted with.
+     */
+    private static boolean isDecimal(String input, int start, int end) {
+        int i = start;
+        if (i < end && (input.charAt(i) == '-' || input.charAt(i) == '+')) {
+            i++;
+        }
+        int digits = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            char c = input.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (input.charAt(i) == 'e' || input.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (input.charAt(i) == '-' || input.charAt(i) == '+')) {
+                i++;
+            }
+            int exponent = i;
+            while (i < end && input.charAt(i) >= '0' && input.charAt(i) <= '9') {
+                i++;
+            }
+            if (i == exponent) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    /**
+     * Converts a plain decimal of which the digits and the power of ten are exact in the target
+     * type, so that a single division is correctly rounded.
+     *
+     * @return The value, or NaN if the input is not such a decimal
+     */
+    private static double decimal(String input, int start, int end, boolean single) {
+        long maxDigits = single ? MAX_EXACT_FLOAT : MAX_EXACT_DOUBLE;
+        int maxFraction = single ? FLOAT_POWERS.length - 1 : POWERS.length - 1;
+        int i = start;
+        boolean negative = false;
+        if (i < end && (input.charAt(i) == '-' || input.charAt(i) == '+')) {
+            negative = input.charAt(i) == '-';
+            i++;
+        }
+        long digits = 0;
+        int count = 0;
+        int fraction = -1;
+        for (; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return Double.NaN;
+            }
+            digits = digits * 10 + (c - '0');
+            count++;
+            if (digits >= maxDigits || fraction >= 0 && ++fraction > maxFraction) {
+                return Double.NaN;
+            }
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        fraction = Math.max(fraction, 0);
+        double value = single ? (float) digits / FLOAT_POWERS[fraction] : digits / POWERS[fraction];
+        return negative ? -value : value;
+    }
+
+    private static String describe(Class<?> type) {
+        if (type == double.class || type == float.class) {
+            return "a number";
+        }
+        return "an integer";
+    }
+
+    private static String format(double bound) {
+        if (bound == Math.rint(bound) && Math.abs(bound) < 1e15) {
+            return Long.toString((long) bound);
+        }
+        return Double.toString(bound);
+    }
+
+}
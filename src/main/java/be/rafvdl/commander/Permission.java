@@ -9,7 +9,7 @@ import java.lang.annotation.Target;
  * Sets the permission of the argument.
  */
 @Retention(RetentionPolicy.RUNTIME)
-@Target({ElementType.TYPE, ElementType.METHOD})
+@Target({ElementType.TYPE, ElementType.METHOD, ElementType.FIELD, ElementType.PARAMETER})
 public @interface Permission {
 
     String value() default "";
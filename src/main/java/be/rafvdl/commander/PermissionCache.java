@@ -0,0 +1,269 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.service.permission.Subject;
+import org.spongepowered.api.util.Identifiable;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Remembers the permission decisions of subjects, so that dispatching and completing commands does
+ * not ask the permission service for the same node over and over.
+ *
+ * <p>A decision is stored under its subject and its permission node. A subject is known by its
+ * unique id if it has one, so a player keeps its decisions across its instances, and otherwise by
+ * the instance itself; {@link Subject#getIdentifier()} is not used, as it builds a string on every
+ * call. The
+ * decisions live in a fixed number of segments, each an open addressing table over preallocated
+ * slots that are kept in least recently used order, so the cache never holds more than its size,
+ * subjects that left included, and a lookup does not allocate. A decision expires after the time
+ * to live, or as soon as the permissions of its subject are invalidated.</p>
+ */
+final class PermissionCache {
+
+    private static final int SEGMENTS = 16;
+    private static final int MISS = -1;
+
+    private final long ttl;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Creates a cache.
+     *
+     * @param maximumSize The maximum number of decisions
+     * @param ttl         The time to live of a decision in nanoseconds
+     */
+    PermissionCache(int maximumSize, long ttl) {
+        checkArgument(maximumSize > 0, "maximumSize must be positive");
+        checkArgument(ttl > 0, "ttl must be positive");
+        this.ttl = ttl;
+        int capacity = Math.max(1, (maximumSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * Checks whether a subject has a permission, asking the subject itself only when the decision
+     * is not cached.
+     *
+     * @param subject    The subject
+     * @param permission The permission
+     * @return true if the subject has the permission
+     */
+    boolean hasPermission(Subject subject, String permission) {
+        Object key = key(subject);
+        long hash = hash(key, permission);
+        Segment segment = segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+        long now = System.nanoTime();
+        int decision;
+        synchronized (segment) {
+            decision = segment.get(key, permission, hash, now);
+        }
+        if (decision != MISS) {
+            return decision == 1;
+        }
+        boolean result = subject.hasPermission(permission);
+        synchronized (segment) {
+            segment.put(key, permission, hash, result, now + ttl);
+        }
+        return result;
+    }
+
+    /**
+     * Forgets all decisions of a subject.
+     *
+     * @param subject The subject
+     */
+    void invalidate(Subject subject) {
+        Object key = key(subject);
+        long now = System.nanoTime();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.expire(key, now);
+            }
+        }
+    }
+
+    /**
+     * Forgets all decisions.
+     */
+    void invalidate() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private static Object key(Subject subject) {
+        return subject instanceof Identifiable ? ((Identifiable) subject).getUniqueId() : subject;
+    }
+
+    private static long hash(Object subject, String permission) {
+        return (((long) subject.hashCode() << 32) ^ (permission.hashCode() & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+    }
+
+    private static final class Segment {
+
+        private final Object[] subjects;
+        private final String[] permissions;
+        private final long[] hashes;
+        private final boolean[] decisions;
+        private final long[] expiries;
+        private final int[] previous;
+        private final int[] next;
+        private final int[] table;
+        private final int mask;
+        private int size;
+        private int head = -1;
+        private int tail = -1;
+
+        Segment(int capacity) {
+            this.subjects = new Object[capacity];
+            this.permissions = new String[capacity];
+            this.hashes = new long[capacity];
+            this.decisions = new boolean[capacity];
+            this.expiries = new long[capacity];
+            this.previous = new int[capacity];
+            this.next = new int[capacity];
+            this.table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+            this.mask = table.length - 1;
+        }
+
+        int get(Object subject, String permission, long hash, long now) {
+            int index = find(subject, permission, hash);
+            if (index < 0) {
+                return MISS;
+            }
+            int slot = table[index] - 1;
+            if (expiries[slot] - now < 0) {
+                return MISS;
+            }
+            unlink(slot);
+            linkFirst(slot);
+            return decisions[slot] ? 1 : 0;
+        }
+
+        void put(Object subject, String permission, long hash, boolean decision, long expiry) {
+            int index = find(subject, permission, hash);
+            int slot;
+            if (index >= 0) {
+                slot = table[index] - 1;
+                unlink(slot);
+            } else {
+                if (size < subjects.length) {
+                    slot = size++;
+                } else {
+                    slot = tail;
+                    unlink(slot);
+                    remove(find(subjects[slot], permissions[slot], hashes[slot]));
+                }
+                subjects[slot] = subject;
+                permissions[slot] = permission;
+                hashes[slot] = hash;
+                insert(hash, slot);
+            }
+            decisions[slot] = decision;
+            expiries[slot] = expiry;
+            linkFirst(slot);
+        }
+
+        /**
+         * Expires the decisions of a subject, which stay in their slots until they are evicted or
+         * replaced.
+         */
+        void expire(Object subject, long now) {
+            for (int slot = 0; slot < size; slot++) {
+                if (subjects[slot].equals(subject)) {
+                    expiries[slot] = now - 1;
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(table, 0);
+            Arrays.fill(subjects, null);
+            Arrays.fill(permissions, null);
+            size = 0;
+            head = -1;
+            tail = -1;
+        }
+
+        /**
+         * Finds the table index of a key.
+         *
+         * @return The index, or -(free index + 1) if the key is absent
+         */
+        private int find(Object subject, String permission, long hash) {
+            int index = (int) (hash >>> 32) & mask;
+            while (table[index] != 0) {
+                int slot = table[index] - 1;
+                if (hashes[slot] == hash && subjects[slot].equals(subject) && permissions[slot].equals(permission)) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -index - 1;
+        }
+
+        private void insert(long hash, int slot) {
+            int index = (int) (hash >>> 32) & mask;
+            while (table[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            table[index] = slot + 1;
+        }
+
+        private void remove(int index) {
+            // Backward shift deletion keeps every probe sequence unbroken without tombstones.
+            int hole = index;
+            int current = index;
+            while (true) {
+                current = (current + 1) & mask;
+                if (table[current] == 0) {
+                    break;
+                }
+                int home = (int) (hashes[table[current] - 1] >>> 32) & mask;
+                boolean movable = hole <= current ? home <= hole || home > current : home <= hole && home > current;
+                if (movable) {
+                    table[hole] = table[current];
+                    hole = current;
+                }
+            }
+            table[hole] = 0;
+        }
+
+        private void unlink(int slot) {
+            int before = previous[slot];
+            int after = next[slot];
+            if (before >= 0) {
+                next[before] = after;
+            } else if (head == slot) {
+                head = after;
+            }
+            if (after >= 0) {
+                previous[after] = before;
+            } else if (tail == slot) {
+                tail = before;
+            }
+            previous[slot] = -1;
+            next[slot] = -1;
+        }
+
+        private void linkFirst(int slot) {
+            previous[slot] = -1;
+            next[slot] = head;
+            if (head >= 0) {
+                previous[head] = slot;
+            }
+            head = slot;
+            if (tail < 0) {
+                tail = slot;
+            }
+        }
+
+    }
+
+}
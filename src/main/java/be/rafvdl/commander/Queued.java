@@ -0,0 +1,30 @@
+package be.rafvdl.commander;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs a command method from {@link Commander}'s {@link CommandQueue} instead of right away.
+ *
+ * <p>The arguments are parsed when the command is used, after which the invocation waits in the
+ * queue of its priority. Every tick the queue runs waiting invocations, highest priority first,
+ * until the time budget of the tick is spent. Errors are reported to the source. A command used
+ * while the queue is full is rejected.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface Queued {
+
+    Priority value() default Priority.NORMAL;
+
+    enum Priority {
+
+        HIGH,
+        NORMAL,
+        LOW
+
+    }
+
+}
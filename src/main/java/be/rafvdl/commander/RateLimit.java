@@ -0,0 +1,30 @@
+package be.rafvdl.commander;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how often a source can use the command within a period.
+ *
+ * <p>A source may use all of its uses at once, after which they are given back evenly over the
+ * period. A use is only counted once the permission is checked and the arguments are parsed.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface RateLimit {
+
+    /**
+     * The number of uses per period.
+     *
+     * @return the uses
+     */
+    int value();
+
+    long per() default 1;
+
+    TimeUnit unit() default TimeUnit.MINUTES;
+
+}
@@ -0,0 +1,119 @@
+package be.rafvdl.commander;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The outcome of a script run through {@link Commander#runScript(org.spongepowered.api.command.CommandSource, java.nio.file.Path)}.
+ */
+public final class ScriptResult {
+
+    private int commands;
+    private int succeeded;
+    private int successCount;
+    private final List<Failure> failures = new ArrayList<Failure>();
+
+    ScriptResult() {
+    }
+
+    /**
+     * Gets the number of commands in the script, without blank lines and comments.
+     *
+     * @return The number of commands
+     */
+    public int getCommands() {
+        return commands;
+    }
+
+    /**
+     * Gets the number of commands that ran without an error.
+     *
+     * @return The number of commands
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Gets the sum of the success counts of all command results.
+     *
+     * @return The success count
+     */
+    public int getSuccessCount() {
+        return successCount;
+    }
+
+    /**
+     * Gets the commands that could not be resolved, parsed or run, in the order of the script.
+     *
+     * @return The failures
+     */
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    void command() {
+        commands++;
+    }
+
+    void success(int count) {
+        succeeded++;
+        successCount += count;
+    }
+
+    void failure(int line, String command, String message) {
+        failures.add(new Failure(line, command, message));
+    }
+
+    void finish() {
+        // Parse failures of a batch are found before the errors of the commands before them.
+        Collections.sort(failures, new Comparator<Failure>() {
+            @Override
+            public int compare(Failure o1, Failure o2) {
+                return Integer.compare(o1.line, o2.line);
+            }
+        });
+    }
+
+    /**
+     * A command of the script that failed.
+     */
+    public static final class Failure {
+
+        private final int line;
+        private final String command;
+        private final String message;
+
+        Failure(int line, String command, String message) {
+            this.line = line;
+            this.command = command;
+            this.message = message;
+        }
+
+        /**
+         * Gets the line of the command, starting at 1.
+         *
+         * @return The line
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return line + ": " + command + ": " + message;
+        }
+
+    }
+
+}
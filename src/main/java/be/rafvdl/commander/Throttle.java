@@ -0,0 +1,157 @@
+package be.rafvdl.commander;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A lock-free token bucket per source, backing {@link Cooldown} and {@link RateLimit}.
+ *
+ * <p>Each bucket is a single theoretical arrival time (the generic cell rate algorithm): a use is
+ * allowed when that time lies no further in the future than the burst allows, and pushes it one
+ * interval further. A bucket whose time has passed is full again, so it holds no information and
+ * is evicted by the next sweep.</p>
+ */
+final class Throttle {
+
+    private static final long MIN_SWEEP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    final int uses;
+    final long period;
+    private final long interval;
+    private final long tolerance;
+    private final long sweepInterval;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * Creates a throttle.
+     *
+     * @param uses   The number of uses per period
+     * @param period The period in nanoseconds
+     */
+    Throttle(int uses, long period) {
+        checkArgument(uses > 0, "uses must be positive");
+        checkArgument(period > 0, "period must be positive");
+        this.uses = uses;
+        this.period = period;
+        this.interval = Math.max(1, period / uses);
+        this.tolerance = this.interval * (uses - 1);
+        this.sweepInterval = Math.max(MIN_SWEEP_INTERVAL, period);
+    }
+
+    /**
+     * Tries to use the bucket of a source.
+     *
+     * @param source The identifier of the source
+     * @return 0 if the use is allowed, otherwise the nanoseconds to wait
+     */
+    long tryAcquire(String source) {
+        long now = System.nanoTime();
+        sweep(now);
+        AtomicLong bucket = buckets.get(source);
+        if (bucket == null) {
+            AtomicLong created = new AtomicLong(now);
+            bucket = buckets.putIfAbsent(source, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        while (true) {
+            long arrival = bucket.get();
+            long base = arrival - now > 0 ? arrival : now;
+            long wait = base - tolerance - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(arrival, base + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back a use of the bucket of a source, taken by {@link #tryAcquire(String)}.
+     *
+     * @param source The identifier of the source
+     */
+    void release(String source) {
+        AtomicLong bucket = buckets.get(source);
+        if (bucket != null) {
+            bucket.addAndGet(-interval);
+        }
+    }
+
+    /**
+     * Tries to use the buckets of a source in several throttles, and only uses them if every one of
+     * them allows it.
+     *
+     * @param throttles The throttles
+     * @param source    The identifier of the source
+     * @return 0 if the use is allowed, otherwise the longest nanoseconds to wait
+     */
+    static long tryAcquire(List<Throttle> throttles, String source) {
+        for (int i = 0; i < throttles.size(); i++) {
+            long wait = throttles.get(i).tryAcquire(source);
+            if (wait > 0) {
+                // The command does not run, so the throttles which allowed it give their use back.
+                for (int j = 0; j < i; j++) {
+                    throttles.get(j).release(source);
+                }
+                for (int j = i + 1; j < throttles.size(); j++) {
+                    wait = Math.max(wait, throttles.get(j).waitTime(source));
+                }
+                return wait;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the longest time a source has to wait before it can use the buckets of several
+     * throttles, without using them.
+     *
+     * <p>This is cheap enough to turn a source away before its arguments are parsed, the use itself
+     * is only taken by {@link #tryAcquire(List, String)} once they are.</p>
+     *
+     * @param throttles The throttles
+     * @param source    The identifier of the source
+     * @return 0 if a use would be allowed now, otherwise the longest nanoseconds to wait
+     */
+    static long waitTime(List<Throttle> throttles, String source) {
+        long wait = 0;
+        for (int i = 0; i < throttles.size(); i++) {
+            wait = Math.max(wait, throttles.get(i).waitTime(source));
+        }
+        return wait;
+    }
+
+    /**
+     * Gets the time a source has to wait before it can use the bucket, without using it.
+     */
+    private long waitTime(String source) {
+        AtomicLong bucket = buckets.get(source);
+        if (bucket == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        return Math.max(0, bucket.get() - tolerance - now);
+    }
+
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < sweepInterval || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<String, AtomicLong> entry : buckets.entrySet()) {
+            if (entry.getValue().get() - now <= 0) {
+                buckets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+package be.rafvdl.commander;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the command traffic written by a {@link TrafficRecorder}.
+ *
+ * <p>The log is a sequence of records, each starting with a tag byte. Every recording session
+ * starts with a session record holding the time the session started. The alias path of a command
+ * is written once per session, the first time it is used, and commands refer to it by number. The
+ * time of a command is the number of nanoseconds since the previous command of the session, zigzag
+ * encoded as it can be negative, and all numbers are written as variable length integers, so a
+ * command costs a few bytes on top of its arguments. A log cut off in the middle of a record, such
+ * as when the server crashed, ends at the last complete record.</p>
+ */
+public final class TrafficLog implements Closeable {
+
+    static final int MAGIC = 0x434D544C;
+    static final int VERSION = 1;
+    static final byte TAG_SESSION = 0;
+    static final byte TAG_PATH = 1;
+    static final byte TAG_COMMAND = 2;
+
+    private final DataInputStream in;
+    private final List<List<String>> paths = new ArrayList<List<String>>();
+    private long time;
+
+    private TrafficLog(DataInputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Opens a log.
+     *
+     * @param file The file of the log
+     * @return The log
+     * @throws IOException If the file cannot be opened
+     */
+    public static TrafficLog open(Path file) throws IOException {
+        return new TrafficLog(new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16)));
+    }
+
+    /**
+     * Reads the next command of the log.
+     *
+     * @return The command, or null at the end of the log
+     * @throws IOException If the log cannot be read or is not a traffic log
+     */
+    @Nullable
+    public Entry next() throws IOException {
+        try {
+            while (true) {
+                int tag = in.read();
+                if (tag == -1) {
+                    return null;
+                }
+                switch (tag) {
+                    case TAG_SESSION:
+                        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                            throw new IOException("Not a traffic log of this version");
+                        }
+                        time = in.readLong();
+                        paths.clear();
+                        break;
+                    case TAG_PATH:
+                        int id = readVarInt(in);
+                        String[] path = new String[readVarInt(in)];
+                        for (int i = 0; i < path.length; i++) {
+                            path[i] = readString(in);
+                        }
+                        if (id != paths.size()) {
+                            throw new IOException("Path " + id + " is out of order");
+                        }
+                        paths.add(Collections.unmodifiableList(Arrays.asList(path)));
+                        break;
+                    case TAG_COMMAND:
+                        List<String> commandPath = paths.get(readVarInt(in));
+                        SourceType source = SourceType.values()[in.readByte()];
+                        Outcome outcome = Outcome.values()[in.readByte()];
+                        long delta = readVarLong(in);
+                        time += (delta >>> 1) ^ -(delta & 1);
+                        long latency = readVarLong(in);
+                        return new Entry(time, latency, source, outcome, commandPath, readString(in));
+                    default:
+                        throw new IOException("Unknown record " + tag);
+                }
+            }
+        } catch (EOFException e) {
+            // The last record is incomplete.
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt traffic log", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The kind of source that ran a command.
+     */
+    public enum SourceType {
+
+        PLAYER,
+        CONSOLE,
+        COMMAND_BLOCK,
+        OTHER
+
+    }
+
+    /**
+     * How a command ended.
+     */
+    public enum Outcome {
+
+        SUCCESS,
+        INVALID_ARGUMENTS,
+        FAILURE,
+        ERROR
+
+    }
+
+    /**
+     * A recorded command.
+     */
+    public static final class Entry {
+
+        private final long timestamp;
+        private final long latency;
+        private final SourceType source;
+        private final Outcome outcome;
+        private final List<String> path;
+        private final String arguments;
+
+        Entry(long timestamp, long latency, SourceType source, Outcome outcome, List<String> path, String arguments) {
+            this.timestamp = timestamp;
+            this.latency = latency;
+            this.source = source;
+            this.outcome = outcome;
+            this.path = path;
+            this.arguments = arguments;
+        }
+
+        /**
+         * Gets the time the command was used.
+         *
+         * @return The time in nanoseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Gets the time the command took, including parsing its arguments.
+         *
+         * @return The time in nanoseconds
+         */
+        public long getLatency() {
+            return latency;
+        }
+
+        public SourceType getSource() {
+            return source;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Gets the first alias of the command and of each of its parents, starting at the root
+         * command.
+         *
+         * @return The path
+         */
+        public List<String> getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the arguments as they were given, after the aliases of the path.
+         *
+         * @return The arguments
+         */
+        public String getArguments() {
+            return arguments;
+        }
+
+        /**
+         * Gets the arguments to pass to the root command to run this command again: the path
+         * without the root command, followed by the arguments.
+         *
+         * @return The arguments
+         */
+        public String getRootArguments() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 1; i < path.size(); i++) {
+                if (i > 1) {
+                    builder.append(' ');
+                }
+                builder.append(path.get(i));
+            }
+            if (builder.length() > 0 && !arguments.isEmpty()) {
+                builder.append(' ');
+            }
+            return builder.append(arguments).toString();
+        }
+
+        @Override
+        public String toString() {
+            String rootArguments = getRootArguments();
+            return "/" + path.get(0) + (rootArguments.isEmpty() ? "" : " " + rootArguments);
+        }
+
+    }
+
+}
@@ -0,0 +1,300 @@
+package be.rafvdl.commander;
+
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.source.CommandBlockSource;
+import org.spongepowered.api.command.source.ConsoleSource;
+import org.spongepowered.api.entity.living.player.Player;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Appends every command run through {@link Commander} to a {@link TrafficLog}, started by
+ * {@link Commander#recordTraffic(Path)}.
+ *
+ * <p>Recording a command only claims a slot in a preallocated ring buffer and fills it in; a
+ * writer thread resolves the alias path of the command, encodes it and writes it to the file. When
+ * the writer falls so far behind that the ring is full, commands are dropped from the log instead of
+ * waiting for it.</p>
+ */
+public abstract class TrafficRecorder {
+
+    static final int DEFAULT_CAPACITY = 1 << 13;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long IDLE = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Event[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+    private volatile long recorded;
+    private final LongAdder dropped = new LongAdder();
+    private final long epoch = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private final long start = System.nanoTime();
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    // Only used by the writer thread.
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Map<String, Integer> paths = new HashMap<String, Integer>();
+    private final List<String> path = new ArrayList<String>();
+    private long time;
+
+    /**
+     * Opens the log and starts the writer thread.
+     *
+     * @param file     The file of the log, which is appended to
+     * @param capacity The number of commands the ring buffer holds, a power of two
+     * @throws IOException If the file cannot be opened
+     */
+    TrafficRecorder(Path file, int capacity) throws IOException {
+        checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1, "capacity must be a power of two");
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.ring = new Event[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Event();
+        }
+        this.mask = capacity - 1;
+        this.time = epoch;
+        buffer.put(TrafficLog.TAG_SESSION).putInt(TrafficLog.MAGIC).putInt(TrafficLog.VERSION).putLong(epoch);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "Commander Traffic Recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Splits the arguments of a root command into the aliases of the command they run and the
+     * arguments of that command. This is called on the writer thread.
+     *
+     * @param root      The root command
+     * @param arguments The arguments of the root command
+     * @param path      The list to add the first alias of the root command and each child to
+     * @return The index at which the arguments of the command start
+     */
+    abstract int resolve(Object root, String arguments, List<String> path);
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the number of commands written to the log.
+     *
+     * @return The number of commands
+     */
+    public long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * Gets the number of commands left out of the log because the ring buffer was full.
+     *
+     * @return The number of commands
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Records a command.
+     *
+     * @param root      The root command
+     * @param source    The source
+     * @param arguments The arguments of the root command
+     * @param start     The {@link System#nanoTime()} at which the command started
+     * @param latency   The time the command took in nanoseconds
+     * @param outcome   How the command ended
+     */
+    void record(Object root, CommandSource source, String arguments, long start, long latency, TrafficLog.Outcome outcome) {
+        if (closed) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+        Event event = ring[(int) sequence & mask];
+        event.root = root;
+        event.arguments = arguments;
+        event.source = source instanceof Player ? TrafficLog.SourceType.PLAYER
+                : source instanceof ConsoleSource ? TrafficLog.SourceType.CONSOLE
+                : source instanceof CommandBlockSource ? TrafficLog.SourceType.COMMAND_BLOCK
+                : TrafficLog.SourceType.OTHER;
+        event.outcome = outcome;
+        event.time = epoch + (start - this.start);
+        event.latency = latency;
+        // Publishes the event to the writer.
+        event.sequence = sequence + 1;
+    }
+
+    /**
+     * Stops recording, and returns once every recorded command is written and the log is closed.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                // Read before draining, so everything recorded before closing is written.
+                boolean closing = closed;
+                if (!drain()) {
+                    flush();
+                    if (closing) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, IDLE);
+                }
+            }
+        } catch (IOException e) {
+            closed = true;
+            e.printStackTrace();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Encodes the published events.
+     *
+     * @return false if there were none
+     */
+    private boolean drain() throws IOException {
+        long sequence = tail;
+        Event event = ring[(int) sequence & mask];
+        if (event.sequence != sequence + 1) {
+            return false;
+        }
+        do {
+            encode(event);
+            event.root = null;
+            event.arguments = null;
+            sequence++;
+            // Hands the slot back to the producers.
+            tail = sequence;
+            recorded++;
+            event = ring[(int) sequence & mask];
+        } while (event.sequence == sequence + 1);
+        return true;
+    }
+
+    private void encode(Event event) throws IOException {
+        path.clear();
+        int split = resolve(event.root, event.arguments, path);
+        String key = path.size() == 1 ? path.get(0) : String.join(" ", path);
+        Integer id = paths.get(key);
+        if (id == null) {
+            id = paths.size();
+            paths.put(key, id);
+            ensure(11);
+            buffer.put(TrafficLog.TAG_PATH);
+            putVarLong(id);
+            putVarLong(path.size());
+            for (String alias : path) {
+                putString(alias);
+            }
+        }
+        byte[] arguments = event.arguments.substring(split).getBytes(StandardCharsets.UTF_8);
+        ensure(33 + arguments.length);
+        buffer.put(TrafficLog.TAG_COMMAND);
+        putVarLong(id);
+        buffer.put((byte) event.source.ordinal());
+        buffer.put((byte) event.outcome.ordinal());
+        // Commands of other threads may be published out of order, so the difference can be negative.
+        long delta = event.time - time;
+        putVarLong((delta << 1) ^ (delta >> 63));
+        time = event.time;
+        putVarLong(event.latency);
+        putVarLong(arguments.length);
+        buffer.put(arguments);
+    }
+
+    private void putString(String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        ensure(5 + bytes.length);
+        putVarLong(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocate(bytes);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static final class Event {
+
+        private volatile long sequence;
+        private Object root;
+        private String arguments;
+        private TrafficLog.SourceType source;
+        private TrafficLog.Outcome outcome;
+        private long time;
+        private long latency;
+
+    }
+
+}
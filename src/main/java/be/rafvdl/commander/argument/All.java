@@ -6,12 +6,37 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- * Marks a parameter as a {@link java.util.Collection} of possible arguments.
+ * Marks a parameter as all remaining arguments, each parsed as the given type.
+ *
+ * <p>The parameter is a {@link java.util.Collection} or {@link java.util.List}, which holds all
+ * values, or an {@link Iterable} or {@link java.util.stream.Stream}, which parses the values while
+ * it is iterated. The lazy types keep memory use flat for arguments such as selectors that match
+ * many arguments, and should be iterated on the main thread before the command returns. The values
+ * of {@link be.rafvdl.commander.Async} and {@link be.rafvdl.commander.Queued} commands are all
+ * parsed before the command is run.</p>
+ *
+ * <p>Numbers are checked before the command is run. Any other invalid argument of a lazy parameter
+ * is only found when iteration reaches it: iterating then throws an unchecked exception out of
+ * {@code hasNext} or {@code next}, which reaches the source as the usual error for an invalid
+ * argument if it is left to propagate out of the command method. Catching it hides the error, and
+ * the values before it have been handed out by then already.</p>
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.PARAMETER})
 public @interface All {
 
+    /**
+     * The type of a single value.
+     *
+     * @return the type
+     */
     Class<?> value();
 
+    /**
+     * The maximum number of values, further values are ignored.
+     *
+     * @return the limit, or 0 for no limit
+     */
+    int limit() default 0;
+
 }
@@ -16,6 +16,32 @@ public @interface Choices {
      */
     String value();
 
+    /**
+     * Whether the choices may change after the command is registered.
+     *
+     * <p>Current choices are parsed and completed from a sorted copy of the dependency, not from
+     * the map itself. Changes to a map are only seen once they are published with
+     * {@link be.rafvdl.commander.Commander#updateChoices(String, String...)}, or once the map is
+     * replaced with {@link be.rafvdl.commander.Commander#addDependency(String, Object)}. The
+     * choices of a {@link be.rafvdl.commander.ChoiceProvider} are reloaded when its version
+     * changes, whatever the value of this.</p>
+     *
+     * @return true if the choices may change
+     */
     boolean current() default false;
 
+    /**
+     * Whether the input is matched against the choices regardless of case.
+     *
+     * @return true to ignore case
+     */
+    boolean ignoreCase() default false;
+
+    /**
+     * The maximum number of choices offered by tab completion.
+     *
+     * @return the limit, or 0 for no limit
+     */
+    int limit() default 0;
+
 }
@@ -6,9 +6,15 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- * Marks a boolean as a flag.
+ * Marks a parameter as a flag, which may be given anywhere in the arguments.
  *
- * <p>This annotation <u>must</u> be accompanied by a {@link Key} annotation.</p>
+ * <p>A boolean is set to true when its flag is present. A boolean with a single character key is
+ * a short flag ({@code -f}, combinable as {@code -fq}), any other flag is a long flag
+ * ({@code --key}). A String or numeric parameter is a long flag with a value
+ * ({@code --key value} or {@code --key=value}).</p>
+ *
+ * <p>This annotation <u>must</u> be accompanied by a {@link Key} annotation, which is the name of
+ * the flag.</p>
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.PARAMETER})
@@ -0,0 +1,108 @@
+package be.rafvdl.commander;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AliasIndexTest {
+
+    private static AliasIndex<String> index(String... aliases) {
+        Map<String, String> map = new HashMap<String, String>();
+        for (String alias : aliases) {
+            map.put(alias, alias);
+        }
+        return new AliasIndex<String>(map);
+    }
+
+    @Test
+    public void findsAliasesIgnoringCase() {
+        AliasIndex<String> index = index("teleport", "tp", "t", "tell");
+        assertEquals("tp", index.get("TP"));
+        assertEquals("t", index.get("t"));
+        assertEquals("teleport", index.get("/teleport", 1, 9));
+        assertNull(index.get("te"));
+        assertNull(index.get("tpa"));
+        assertNull(index.get(""));
+    }
+
+    @Test
+    public void completesPrefixes() {
+        AliasIndex<String> index = index("teleport", "tp", "t", "tell", "help");
+        assertEquals(Arrays.asList("t", "teleport", "tell", "tp"), index.complete("t"));
+        assertEquals(Arrays.asList("teleport", "tell"), index.complete("TE"));
+        assertEquals(Arrays.asList("help", "t", "teleport", "tell", "tp"), index.complete(""));
+        assertEquals(Collections.emptyList(), index.complete("x"));
+        assertEquals(Collections.emptyList(), index.complete("tells"));
+    }
+
+    @Test
+    public void empty() {
+        AliasIndex<String> index = AliasIndex.empty();
+        assertNull(index.get("a"));
+        assertEquals(Collections.emptyList(), index.complete(""));
+        assertEquals(Collections.emptyList(), index.suggest("a", 5));
+    }
+
+    @Test
+    public void distance() {
+        assertEquals(0, AliasIndex.distance("", ""));
+        assertEquals(3, AliasIndex.distance("abc", ""));
+        assertEquals(3, AliasIndex.distance("", "abc"));
+        assertEquals(3, AliasIndex.distance("kitten", "sitting"));
+        assertEquals(1, AliasIndex.distance("tell", "tel"));
+        assertEquals(2, AliasIndex.distance("ab", "ba"));
+    }
+
+    @Test
+    public void suggestsClosestFirst() {
+        AliasIndex<String> index = index("teleport", "tell", "help", "helps", "home");
+        assertEquals(Arrays.asList("teleport"), index.suggest("TELPORT", 5));
+        assertEquals(Arrays.asList("help", "helps"), index.suggest("helpx", 5));
+        assertEquals(Arrays.asList("helps", "help"), index.suggest("helpsx", 5));
+        assertEquals(Arrays.asList("helps"), index.suggest("helpsx", 1));
+        assertEquals(Collections.emptyList(), index.suggest("xyz", 5));
+        assertEquals(Collections.emptyList(), index.suggest("help", 0));
+    }
+
+    @Test
+    public void suggestMatchesABruteForceSearch() {
+        Random random = new Random(0);
+        for (int round = 0; round < 200; round++) {
+            List<String> aliases = new ArrayList<String>();
+            int size = 1 + random.nextInt(200);
+            for (int i = 0; i < size; i++) {
+                aliases.add(word(random, 1 + random.nextInt(10)));
+            }
+            AliasIndex<String> index = index(aliases.toArray(new String[aliases.size()]));
+            for (int query = 0; query < 20; query++) {
+                String input = word(random, 1 + random.nextInt(12));
+                assertEquals(input, bruteForce(new TreeSet<String>(aliases), input), index.suggest(input, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    private static List<String> bruteForce(SortedSet<String> aliases, String input) {
+        int maxDistance = Math.max(1, Math.min(3, input.length() / 3));
+        List<String> matches = new ArrayList<String>();
+        for (int distance = 0; distance <= maxDistance; distance++) {
+            for (String alias : aliases) {
+                if (AliasIndex.distance(input, alias) == distance) {
+                    matches.add(alias);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static String word(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            // Few letters, so that many words lie within the maximum distance of each other.
+            chars[i] = (char) ('a' + random.nextInt(4));
+        }
+        return new String(chars);
+    }
+
+}
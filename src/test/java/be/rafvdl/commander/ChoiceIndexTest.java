@@ -0,0 +1,163 @@
+package be.rafvdl.commander;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class ChoiceIndexTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static Map<String, Object> choices(String... keys) {
+        Map<String, Object> choices = new HashMap<String, Object>();
+        for (String key : keys) {
+            choices.put(key, key.toUpperCase(Locale.ROOT));
+        }
+        return choices;
+    }
+
+    @Test
+    public void completesPrefixes() {
+        ChoiceIndex index = new ChoiceIndex(choices("apple", "apricot", "banana", "ap"), false, DIRECT);
+        assertEquals(Arrays.asList("ap", "apple", "apricot"), index.complete("ap", 0));
+        assertEquals(Arrays.asList("ap", "apple"), index.complete("ap", 2));
+        assertEquals(Arrays.asList("apricot"), index.complete("apr", 0));
+        assertEquals(Collections.emptyList(), index.complete("c", 0));
+        assertEquals(Collections.emptyList(), index.complete("bananas", 0));
+        assertEquals(4, index.complete("", 0).size());
+    }
+
+    @Test
+    public void ignoresCase() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("Stone", 1);
+        map.put("stone", 2);
+        map.put("Sand", 3);
+        ChoiceIndex index = new ChoiceIndex(map, true, DIRECT);
+        assertEquals(Arrays.asList("Sand", "Stone", "stone"), index.complete("S", 0));
+        assertEquals(Arrays.asList("Stone", "stone"), index.complete("st", 0));
+        // The key of the same case wins, otherwise the first in order.
+        assertEquals(2, index.find("stone"));
+        assertEquals(1, index.find("Stone"));
+        assertEquals(1, index.find("STONE"));
+        assertEquals(3, index.find("sAND"));
+        assertNull(index.find("sto"));
+    }
+
+    @Test
+    public void snapshotsDoNotChange() {
+        Map<String, Object> map = choices("a", "b");
+        ChoiceIndex index = new ChoiceIndex(map, false, DIRECT);
+        List<String> keys = index.keys();
+        Object version = index.version();
+        map.put("c", "C");
+        map.remove("a");
+        index.update(map, "c", "a");
+        assertEquals(Arrays.asList("a", "b"), keys);
+        assertEquals(Arrays.asList("b", "c"), index.keys());
+        assertNotSame(version, index.version());
+    }
+
+    @Test
+    public void updateWithoutChangesKeepsTheVersion() {
+        Map<String, Object> map = choices("a", "b");
+        ChoiceIndex index = new ChoiceIndex(map, false, DIRECT);
+        Object version = index.version();
+        index.update(map, "missing");
+        index.update(map);
+        assertSame(version, index.version());
+    }
+
+    @Test
+    public void updateMatchesRebuild() {
+        Random random = new Random(0);
+        for (boolean ignoreCase : new boolean[]{false, true}) {
+            Map<String, Object> map = new HashMap<String, Object>();
+            ChoiceIndex updated = new ChoiceIndex(map, ignoreCase, DIRECT);
+            ChoiceIndex rebuilt = new ChoiceIndex(map, ignoreCase, DIRECT);
+            for (int round = 0; round < 2000; round++) {
+                String[] changed = new String[random.nextInt(6)];
+                for (int i = 0; i < changed.length; i++) {
+                    // A small alphabet, so keys collide, repeat and differ only in case.
+                    String key = Integer.toString(random.nextInt(64), 36) + (random.nextBoolean() ? "x" : "X");
+                    if (random.nextInt(3) == 0) {
+                        map.remove(key);
+                    } else {
+                        map.put(key, round);
+                    }
+                    changed[i] = key;
+                }
+                updated.update(map, changed);
+                rebuilt.rebuild(map);
+                assertEquals(rebuilt.keys(), updated.keys());
+                for (String key : rebuilt.keys()) {
+                    assertEquals(key, rebuilt.find(key), updated.find(key));
+                }
+                String prefix = Integer.toString(random.nextInt(8), 36);
+                assertEquals(rebuilt.complete(prefix, 0), updated.complete(prefix, 0));
+            }
+        }
+    }
+
+    @Test
+    public void reloadsProviderOnNewVersion() {
+        final Map<String, Object> map = choices("a");
+        final long[] version = {1};
+        final int[] loads = {0};
+        ChoiceIndex index = new ChoiceIndex(new ChoiceProvider<Object>() {
+            @Override
+            public long version() {
+                return version[0];
+            }
+
+            @Override
+            public Map<String, Object> load() {
+                loads[0]++;
+                return new HashMap<String, Object>(map);
+            }
+        }, false, DIRECT);
+        assertEquals(Arrays.asList("a"), index.keys());
+        assertEquals(Arrays.asList("a"), index.keys());
+        assertEquals(1, loads[0]);
+
+        map.put("b", "B");
+        assertEquals(Arrays.asList("a"), index.keys());
+        version[0]++;
+        assertEquals(Arrays.asList("a", "b"), index.keys());
+        assertEquals(2, loads[0]);
+
+        index.invalidate();
+        index.keys();
+        assertEquals(3, loads[0]);
+    }
+
+    @Test
+    public void keepsChoicesWhenProviderFails() {
+        final long[] version = {1};
+        ChoiceIndex index = new ChoiceIndex(new ChoiceProvider<Object>() {
+            @Override
+            public long version() {
+                return version[0];
+            }
+
+            @Override
+            public Map<String, Object> load() throws Exception {
+                if (version[0] > 1) {
+                    throw new Exception("Expected by the test");
+                }
+                return choices("a");
+            }
+        }, false, DIRECT);
+        version[0]++;
+        assertEquals(Arrays.asList("a"), index.keys());
+    }
+
+}
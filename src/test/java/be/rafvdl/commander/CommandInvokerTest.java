@@ -0,0 +1,79 @@
+package be.rafvdl.commander;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class CommandInvokerTest {
+
+    private final StringBuilder calls = new StringBuilder();
+
+    public Object join(Object source, String text, int number) {
+        calls.append(text).append(number);
+        return calls.toString();
+    }
+
+    public static Object primitives(Object source, int i, long l, double d, float f, short s, byte b, boolean flag) {
+        return i + " " + l + " " + d + " " + f + " " + s + " " + b + " " + flag;
+    }
+
+    private static Object secret(Object source) {
+        return "secret";
+    }
+
+    public Object fail(Object source) throws IOException {
+        throw new IOException("Expected by the test");
+    }
+
+    public CommandInvokerTest() {
+    }
+
+    private CommandInvokerTest(String text) {
+        calls.append(text);
+    }
+
+    @Test
+    public void callsThroughAConstantHandle() throws Throwable {
+        CommandInvoker invoker = CommandInvoker.of(this, getClass().getMethod("join", Object.class, String.class, int.class));
+        assertEquals(ConstantInvokers.class.getName() + "$", invoker.getClass().getName().replaceAll("[0-9]+$", ""));
+        assertEquals("a1", invoker.invoke(new Object[]{null, "a", null}, new long[]{0, 0, 1}));
+        assertEquals("a1b2", invoker.invoke(new Object[]{null, "b", null}, new long[]{0, 0, 2}));
+    }
+
+    @Test
+    public void readsNumbersFromThePrimitiveLane() throws Throwable {
+        Class<?>[] types = {Object.class, int.class, long.class, double.class, float.class, short.class, byte.class, boolean.class};
+        CommandInvoker invoker = CommandInvoker.of(null, getClass().getMethod("primitives", types));
+        long[] primitives = {0, -3, Long.MIN_VALUE, Double.doubleToRawLongBits(1.5), Float.floatToRawIntBits(-2.25f), -7, 8, 0};
+        Object[] values = {null, null, null, null, null, null, null, true};
+        String expected = "-3 " + Long.MIN_VALUE + " 1.5 -2.25 -7 8 true";
+        assertEquals(expected, invoker.invoke(values, primitives));
+        assertArrayEquals(new Object[]{null, -3, Long.MIN_VALUE, 1.5, -2.25f, (short) -7, (byte) 8, true},
+                CommandInvoker.boxed(types, values, primitives));
+    }
+
+    @Test
+    public void callsPrivateMembers() throws Throwable {
+        CommandInvoker method = CommandInvoker.of(null, getClass().getDeclaredMethod("secret", Object.class));
+        assertEquals("secret", method.invoke(new Object[]{null}, new long[1]));
+        CommandInvoker constructor = CommandInvoker.of(getClass().getDeclaredConstructor(String.class));
+        assertEquals("made", ((CommandInvokerTest) constructor.invoke(new Object[]{"made"}, new long[1])).calls.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void throwsWhatTheMethodThrows() throws Throwable {
+        CommandInvoker.of(this, getClass().getMethod("fail", Object.class)).invoke(new Object[]{null}, new long[1]);
+    }
+
+    @Test
+    public void definesAClassPerHandle() throws Throwable {
+        CommandInvoker first = CommandInvoker.of(this, getClass().getMethod("join", Object.class, String.class, int.class));
+        CommandInvoker second = CommandInvoker.of(new CommandInvokerTest(), getClass().getMethod("join", Object.class, String.class, int.class));
+        assertNotSame(first.getClass(), second.getClass());
+        first.invoke(new Object[]{null, "a", null}, new long[]{0, 0, 1});
+        assertEquals("b2", second.invoke(new Object[]{null, "b", null}, new long[]{0, 0, 2}));
+    }
+
+}
@@ -0,0 +1,98 @@
+package be.rafvdl.commander;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FlagTableTest {
+
+    private static Commander.Argument flag(String name, Class<?> type) {
+        Commander.Argument argument = new Commander.Argument(name, null);
+        argument.parameter = CommandRegistrar.Parameter.of(type).key(name).flag();
+        return argument;
+    }
+
+    @Test
+    public void noFlags() {
+        List<Commander.Argument> arguments = new ArrayList<Commander.Argument>();
+        arguments.add(new Commander.Argument("player", null));
+        assertNull(FlagTable.of(arguments));
+    }
+
+    @Test
+    public void findsEveryFlagOfAFullTable() {
+        List<Commander.Argument> arguments = new ArrayList<Commander.Argument>();
+        for (int i = 0; i < FlagTable.MAX_FLAGS; i++) {
+            arguments.add(flag("flag" + i, boolean.class));
+        }
+        FlagTable table = FlagTable.of(arguments);
+        assertNotNull(table);
+        for (int i = 0; i < FlagTable.MAX_FLAGS; i++) {
+            String input = "--flag" + i + "=x";
+            FlagTable.Flag flag = table.find(input, 2, input.indexOf('='));
+            assertNotNull(input, flag);
+            assertEquals(i, flag.index);
+            assertEquals(i, flag.argument);
+        }
+    }
+
+    @Test
+    public void separatesNamesWithEqualStringHashes() {
+        // "Aa" and "BB" share their String.hashCode.
+        List<Commander.Argument> arguments = new ArrayList<Commander.Argument>();
+        arguments.add(flag("Aa", boolean.class));
+        arguments.add(flag("BB", boolean.class));
+        FlagTable table = FlagTable.of(arguments);
+        assertEquals("Aa", table.find("Aa", 0, 2).name);
+        assertEquals("BB", table.find("BB", 0, 2).name);
+    }
+
+    @Test
+    public void rejectsUnknownNames() {
+        List<Commander.Argument> arguments = new ArrayList<Commander.Argument>();
+        arguments.add(flag("force", boolean.class));
+        arguments.add(flag("f", boolean.class));
+        FlagTable table = FlagTable.of(arguments);
+        assertNull(table.find("forc", 0, 4));
+        assertNull(table.find("forced", 0, 6));
+        assertNull(table.find("", 0, 0));
+        assertNull(table.find("q", 0, 1));
+        assertEquals("f", table.find("-f", 1, 2).name);
+        assertTrue(table.find("-f", 1, 2).isShort);
+        assertFalse(table.find("force", 0, 5).isShort);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyFlags() {
+        List<Commander.Argument> arguments = new ArrayList<Commander.Argument>();
+        for (int i = 0; i <= FlagTable.MAX_FLAGS; i++) {
+            arguments.add(flag("flag" + i, boolean.class));
+        }
+        FlagTable.of(arguments);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicateFlags() {
+        List<Commander.Argument> arguments = new ArrayList<Commander.Argument>();
+        arguments.add(flag("force", boolean.class));
+        arguments.add(flag("force", boolean.class));
+        FlagTable.of(arguments);
+    }
+
+    @Test
+    public void parsesValues() {
+        List<Commander.Argument> arguments = new ArrayList<Commander.Argument>();
+        arguments.add(flag("count", int.class));
+        arguments.add(flag("name", String.class));
+        FlagTable table = FlagTable.of(arguments);
+        String input = "--count=12 --name=abc";
+        assertEquals(12, table.find(input, 2, 7).parse(input, 8, 10));
+        assertEquals("abc", table.find(input, 13, 17).parse(input, 18, 21));
+        assertNull(table.find(input, 2, 7).parse("2147483648", 0, 10));
+        assertTrue(table.find(input, 2, 7).valued);
+    }
+
+}
@@ -0,0 +1,101 @@
+package be.rafvdl.commander;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void empty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.mean(), 0);
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(0, histogram.max());
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 8; i++) {
+            histogram.record(i);
+        }
+        assertEquals(8, histogram.count());
+        assertEquals(3.5, histogram.mean(), 0);
+        assertEquals(0, histogram.percentile(0));
+        assertEquals(3, histogram.percentile(50));
+        assertEquals(7, histogram.percentile(100));
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.percentile(100));
+    }
+
+    @Test
+    public void boundsTheRelativeError() {
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            long value = 1 + (random.nextLong() >>> (24 + random.nextInt(39)));
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE >>> 20);
+            long percentile = histogram.percentile(50);
+            assertTrue(value + " reported as " + percentile, percentile >= value && percentile <= value + value / 8);
+        }
+    }
+
+    @Test
+    public void reportsTheMaximumForValuesBeyondTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long large = 1L << 50;
+        histogram.record(1000);
+        histogram.record(large);
+        histogram.record(large + 1);
+        assertEquals(3, histogram.count());
+        assertEquals(large + 1, histogram.max());
+        assertEquals(large + 1, histogram.percentile(99));
+        assertEquals(large + 1, histogram.percentile(100));
+        assertTrue(histogram.percentile(10) < 1200);
+    }
+
+    @Test
+    public void countsEveryThread() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        histogram.record(j);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, histogram.count());
+        assertEquals(9999, histogram.max());
+    }
+
+    @Test
+    public void reset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        histogram.record(10);
+        assertEquals(10, histogram.percentile(100));
+    }
+
+}
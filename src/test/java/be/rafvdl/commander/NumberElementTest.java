@@ -0,0 +1,151 @@
+package be.rafvdl.commander;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NumberElementTest {
+
+    private static Number parse(Class<?> type, String input) {
+        return NumberElement.parse(type, input, 0, input.length());
+    }
+
+    @Test
+    public void parsesIntegerLimits() {
+        assertEquals(Integer.MAX_VALUE, parse(int.class, "2147483647"));
+        assertEquals(Integer.MIN_VALUE, parse(int.class, "-2147483648"));
+        assertNull(parse(int.class, "2147483648"));
+        assertNull(parse(int.class, "-2147483649"));
+        assertEquals((short) -32768, parse(short.class, "-32768"));
+        assertNull(parse(short.class, "32768"));
+        assertEquals((byte) 127, parse(byte.class, "+127"));
+        assertNull(parse(byte.class, "128"));
+    }
+
+    @Test
+    public void parsesLongLimits() {
+        assertEquals(Long.MAX_VALUE, parse(long.class, "9223372036854775807"));
+        assertEquals(Long.MIN_VALUE, parse(long.class, "-9223372036854775808"));
+        assertNull(parse(long.class, "9223372036854775808"));
+        assertNull(parse(long.class, "-9223372036854775809"));
+        assertNull(parse(long.class, "99999999999999999999"));
+    }
+
+    @Test
+    public void rejectsMalformedIntegers() {
+        assertNull(parse(int.class, ""));
+        assertNull(parse(int.class, "-"));
+        assertNull(parse(int.class, "+"));
+        assertNull(parse(int.class, "1.0"));
+        assertNull(parse(int.class, "1a"));
+        assertNull(parse(int.class, " 1"));
+        assertEquals(0, parse(int.class, "-0"));
+    }
+
+    @Test
+    public void parsesARangeOfTheInput() {
+        assertEquals(42L, NumberElement.parse(long.class, "x=42;", 2, 4));
+        assertEquals(4.5, NumberElement.parse(double.class, "x=4.5;", 2, 5));
+    }
+
+    @Test
+    public void parsesDecimalsLikeTheJdk() {
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            String input = decimal(random);
+            assertEquals(input, Double.valueOf(input), parse(double.class, input));
+            assertEquals(input, Float.valueOf(input), parse(float.class, input));
+        }
+    }
+
+    @Test
+    public void fallsBackForOtherForms() {
+        assertEquals(1e3, parse(double.class, "1e3"));
+        assertEquals(1.0, parse(double.class, "1."));
+        assertEquals(0.5, parse(double.class, ".5"));
+        assertEquals(-0.0, parse(double.class, "-0.0"));
+        // More digits than a double holds exactly.
+        assertEquals(Double.valueOf("12345678901234567890.5"), parse(double.class, "12345678901234567890.5"));
+        assertEquals(Double.valueOf("0.00000000000000000000000001"), parse(double.class, "0.00000000000000000000000001"));
+        assertNull(parse(double.class, "."));
+        assertNull(parse(double.class, "1..0"));
+        assertNull(parse(double.class, "-"));
+        assertNull(parse(float.class, "abc"));
+    }
+
+    @Test
+    public void rejectsWhatIsNotADecimal() {
+        for (Class<?> type : new Class<?>[]{double.class, float.class}) {
+            assertNull(parse(type, "NaN"));
+            assertNull(parse(type, "Infinity"));
+            assertNull(parse(type, "-Infinity"));
+            assertNull(parse(type, "1.5f"));
+            assertNull(parse(type, "1.5d"));
+            assertNull(parse(type, "2F"));
+            assertNull(parse(type, "0x1p3"));
+            assertNull(parse(type, "1e"));
+            assertNull(parse(type, "1e+"));
+            assertNull(parse(type, "e3"));
+            assertNull(parse(type, " 1.5"));
+        }
+        assertEquals(1.5e-3, parse(double.class, "1.5E-3"));
+        assertEquals(2e3f, parse(float.class, "+2e+3"));
+    }
+
+    @Test
+    public void rejectsValuesTooLargeForTheType() {
+        assertNull(parse(double.class, "1e309"));
+        assertNull(parse(double.class, "-1e309"));
+        assertNull(parse(float.class, "1e39"));
+        assertEquals(1e38f, parse(float.class, "1e38"));
+        assertEquals(Double.MAX_VALUE, parse(double.class, "1.7976931348623157e308"));
+    }
+
+    @Test
+    public void parsesIntoThePrimitiveLane() {
+        long[] lane = new long[3];
+        assertTrue(NumberElement.parse(double.class, "x=-2.5", 2, 6, lane, 1));
+        assertEquals(-2.5, Double.longBitsToDouble(lane[1]), 0);
+        assertTrue(NumberElement.parse(float.class, "0.1", 0, 3, lane, 2));
+        assertEquals(0.1f, Float.intBitsToFloat((int) lane[2]), 0);
+        assertTrue(NumberElement.parse(long.class, "-9223372036854775808", 0, 20, lane, 0));
+        assertEquals(Long.MIN_VALUE, lane[0]);
+        assertFalse(NumberElement.parse(byte.class, "200", 0, 3, lane, 0));
+        assertTrue(NumberElement.inRange(long.class, 9007199254740992L, Double.NEGATIVE_INFINITY, 9007199254740992.0));
+        assertFalse(NumberElement.inRange(long.class, 9007199254740993L, Double.NEGATIVE_INFINITY, 9007199254740992.0));
+        assertFalse(NumberElement.inRange(double.class, Double.doubleToRawLongBits(10.5), 2.5, 10));
+        assertTrue(NumberElement.inRange(float.class, Float.floatToRawIntBits(2.5f), 2.5, 10));
+    }
+
+    @Test
+    public void comparesLongsExactly() {
+        // 2^53 + 1 compared as a double would equal the bound.
+        double max = 9007199254740992.0;
+        assertTrue(NumberElement.inRange(9007199254740992L, Double.NEGATIVE_INFINITY, max));
+        assertFalse(NumberElement.inRange(9007199254740993L, Double.NEGATIVE_INFINITY, max));
+        assertTrue(NumberElement.inRange(Long.MAX_VALUE, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+        assertTrue(NumberElement.inRange(Long.MIN_VALUE, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+        assertFalse(NumberElement.inRange(2L, 2.5, 10));
+        assertTrue(NumberElement.inRange(3L, 2.5, 10));
+        assertFalse(NumberElement.inRange(10.5, 2.5, 10));
+    }
+
+    private static String decimal(Random random) {
+        StringBuilder builder = new StringBuilder();
+        if (random.nextBoolean()) {
+            builder.append('-');
+        }
+        int digits = 1 + random.nextInt(18);
+        int point = random.nextInt(digits + 1);
+        for (int i = 0; i < digits; i++) {
+            if (i == point && i > 0) {
+                builder.append('.');
+            }
+            builder.append((char) ('0' + random.nextInt(10)));
+        }
+        return builder.toString();
+    }
+
+}
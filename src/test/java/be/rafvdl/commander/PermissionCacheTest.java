@@ -0,0 +1,166 @@
+package be.rafvdl.commander;
+
+import org.junit.Test;
+import org.spongepowered.api.service.permission.Subject;
+import org.spongepowered.api.util.Identifiable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PermissionCacheTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final AtomicInteger checks = new AtomicInteger();
+
+    /**
+     * Creates a subject without a unique id which has the given permissions and counts how often it
+     * is asked.
+     */
+    private Subject subject(String... permissions) {
+        return subject(null, permissions);
+    }
+
+    /**
+     * Creates a subject which has the given permissions and counts how often it is asked.
+     */
+    private Subject subject(final UUID uniqueId, String... permissions) {
+        final Set<String> granted = new HashSet<String>(Arrays.asList(permissions));
+        Class<?>[] interfaces = uniqueId != null ? new Class<?>[]{Subject.class, Identifiable.class} : new Class<?>[]{Subject.class};
+        return (Subject) Proxy.newProxyInstance(getClass().getClassLoader(), interfaces, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("getUniqueId")) {
+                    return uniqueId;
+                }
+                if (method.getName().equals("hasPermission") && args.length == 1) {
+                    checks.incrementAndGet();
+                    return granted.contains(args[0]);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @Test
+    public void cachesDecisions() {
+        PermissionCache cache = new PermissionCache(1024, MINUTE);
+        Subject subject = subject("a.b");
+        assertTrue(cache.hasPermission(subject, "a.b"));
+        assertFalse(cache.hasPermission(subject, "a.c"));
+        assertTrue(cache.hasPermission(subject, "a.b"));
+        assertFalse(cache.hasPermission(subject, "a.c"));
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    public void separatesKeysWithEqualHashes() {
+        // Both the ids and "Aa" and "BB" share their hash codes, so both keys of each pair hash alike.
+        PermissionCache cache = new PermissionCache(1024, MINUTE);
+        Subject first = subject(new UUID(1, 0), "Aa");
+        Subject second = subject(new UUID(0, 1), "BB");
+        for (int i = 0; i < 2; i++) {
+            assertTrue(cache.hasPermission(first, "Aa"));
+            assertFalse(cache.hasPermission(first, "BB"));
+            assertFalse(cache.hasPermission(second, "Aa"));
+            assertTrue(cache.hasPermission(second, "BB"));
+        }
+        assertEquals(4, checks.get());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+        int maximumSize = 64;
+        PermissionCache cache = new PermissionCache(maximumSize, MINUTE);
+        Subject subject = subject();
+        cache.hasPermission(subject, "kept");
+        for (int i = 0; i < 10000; i++) {
+            cache.hasPermission(subject, "node." + i);
+            // Used all along, so never the least recently used of its segment.
+            cache.hasPermission(subject, "kept");
+        }
+        checks.set(0);
+        cache.hasPermission(subject, "kept");
+        assertEquals(0, checks.get());
+
+        // Most recent first, so a miss only evicts decisions that were already looked up.
+        int hits = 0;
+        for (int i = 9999; i >= 0; i--) {
+            int before = checks.get();
+            cache.hasPermission(subject, "node." + i);
+            if (checks.get() == before) {
+                hits++;
+            }
+        }
+        assertTrue("Kept " + hits + " decisions", hits > 0 && hits < maximumSize);
+    }
+
+    @Test
+    public void invalidatesASubject() {
+        PermissionCache cache = new PermissionCache(1024, MINUTE);
+        Subject alice = subject("a");
+        Subject bob = subject("a");
+        cache.hasPermission(alice, "a");
+        cache.hasPermission(bob, "a");
+        cache.invalidate(alice);
+        checks.set(0);
+        cache.hasPermission(alice, "a");
+        cache.hasPermission(bob, "a");
+        assertEquals(1, checks.get());
+        // The fresh decision is cached again.
+        cache.hasPermission(alice, "a");
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    public void sharesTheDecisionsOfAUniqueId() {
+        PermissionCache cache = new PermissionCache(1024, MINUTE);
+        UUID uniqueId = UUID.randomUUID();
+        Subject player = subject(uniqueId, "a");
+        Subject rejoined = subject(uniqueId, "a");
+        cache.hasPermission(player, "a");
+        cache.hasPermission(rejoined, "a");
+        assertEquals(1, checks.get());
+        cache.invalidate(rejoined);
+        cache.hasPermission(player, "a");
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    public void invalidatesEverything() {
+        PermissionCache cache = new PermissionCache(1024, MINUTE);
+        Subject subject = subject("a");
+        cache.hasPermission(subject, "a");
+        cache.invalidate();
+        checks.set(0);
+        assertTrue(cache.hasPermission(subject, "a"));
+        assertTrue(cache.hasPermission(subject, "a"));
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    public void expiresDecisions() throws InterruptedException {
+        PermissionCache cache = new PermissionCache(1024, TimeUnit.MILLISECONDS.toNanos(5));
+        Subject subject = subject("a");
+        cache.hasPermission(subject, "a");
+        Thread.sleep(20);
+        cache.hasPermission(subject, "a");
+        assertEquals(2, checks.get());
+    }
+
+}
@@ -0,0 +1,100 @@
+package be.rafvdl.commander;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ThrottleTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+
+    @Test
+    public void allowsTheBurstThenWaits() {
+        Throttle throttle = new Throttle(3, HOUR);
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertEquals(0, throttle.tryAcquire("a"));
+        long wait = throttle.tryAcquire("a");
+        assertTrue(wait > 0 && wait <= HOUR / 3);
+        // Every source has its own bucket.
+        assertEquals(0, throttle.tryAcquire("b"));
+    }
+
+    @Test
+    public void releaseGivesAUseBack() {
+        Throttle throttle = new Throttle(1, HOUR);
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertTrue(throttle.tryAcquire("a") > 0);
+        throttle.release("a");
+        assertEquals(0, throttle.tryAcquire("a"));
+        // A source without a bucket has nothing to give back.
+        throttle.release("b");
+        assertEquals(0, throttle.tryAcquire("b"));
+    }
+
+    @Test
+    public void refillsAfterTheInterval() throws InterruptedException {
+        Throttle throttle = new Throttle(2, TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertTrue(throttle.tryAcquire("a") > 0);
+        Thread.sleep(30);
+        assertEquals(0, throttle.tryAcquire("a"));
+    }
+
+    @Test
+    public void doesNotOverflowWithALongPeriod() {
+        Throttle throttle = new Throttle(2, Long.MAX_VALUE);
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertTrue(throttle.tryAcquire("a") > 0);
+        assertTrue(throttle.tryAcquire("a") > 0);
+    }
+
+    @Test
+    public void deniedUseRollsBackEarlierThrottles() {
+        Throttle wide = new Throttle(5, HOUR);
+        Throttle narrow = new Throttle(1, HOUR);
+        assertEquals(0, Throttle.tryAcquire(Arrays.asList(wide, narrow), "a"));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(Throttle.tryAcquire(Arrays.asList(wide, narrow), "a") > 0);
+        }
+        // Only the first use counted against the wide throttle.
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, wide.tryAcquire("a"));
+        }
+        assertTrue(wide.tryAcquire("a") > 0);
+    }
+
+    @Test
+    public void reportsTheLongestWait() {
+        Throttle second = new Throttle(1, TimeUnit.SECONDS.toNanos(1));
+        Throttle hour = new Throttle(1, HOUR);
+        assertEquals(0, Throttle.tryAcquire(Arrays.asList(second, hour), "a"));
+        long wait = Throttle.tryAcquire(Arrays.asList(second, hour), "a");
+        assertTrue(wait > TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void waitTimeDoesNotUseTheBuckets() {
+        Throttle wide = new Throttle(2, HOUR);
+        Throttle narrow = new Throttle(1, HOUR);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, Throttle.waitTime(Arrays.asList(wide, narrow), "a"));
+        }
+        assertEquals(0, Throttle.tryAcquire(Arrays.asList(wide, narrow), "a"));
+        long wait = Throttle.waitTime(Arrays.asList(wide, narrow), "a");
+        assertTrue(wait > 0 && wait <= HOUR);
+        // Only the narrow throttle makes the source wait.
+        assertEquals(0, Throttle.waitTime(Arrays.asList(wide), "a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoUses() {
+        new Throttle(0, HOUR);
+    }
+
+}
@@ -0,0 +1,212 @@
+package be.rafvdl.commander;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.source.ConsoleSource;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class TrafficRecorderTest {
+
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("traffic", ".log");
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static <T extends CommandSource> T source(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(TrafficRecorderTest.class.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }));
+    }
+
+    /**
+     * A recorder of which the path of a command is the root followed by the first word of its
+     * arguments, if that starts with a colon.
+     */
+    private static class Recorder extends TrafficRecorder {
+
+        Recorder(Path file, int capacity) throws IOException {
+            super(file, capacity);
+        }
+
+        @Override
+        int resolve(Object root, String arguments, List<String> path) {
+            path.add((String) root);
+            if (arguments.startsWith(":")) {
+                int end = arguments.indexOf(' ');
+                path.add(arguments.substring(1, end < 0 ? arguments.length() : end));
+                return end < 0 ? arguments.length() : end + 1;
+            }
+            return 0;
+        }
+
+    }
+
+    private List<TrafficLog.Entry> read() throws IOException {
+        List<TrafficLog.Entry> entries = new ArrayList<TrafficLog.Entry>();
+        try (TrafficLog log = TrafficLog.open(file)) {
+            TrafficLog.Entry entry;
+            while ((entry = log.next()) != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        TrafficRecorder recorder = new Recorder(file, 16);
+        long start = System.nanoTime();
+        recorder.record("tp", source(ConsoleSource.class), "alice bob", start, 1500, TrafficLog.Outcome.SUCCESS);
+        recorder.record("region", source(CommandSource.class), ":claim home", start + 1000, 300000, TrafficLog.Outcome.FAILURE);
+        // Out of order, as when commands of other threads are published late.
+        recorder.record("tp", source(CommandSource.class), "", start - 5000, 0, TrafficLog.Outcome.INVALID_ARGUMENTS);
+        recorder.record("say", source(CommandSource.class), "h\u00e9llo \u2713", start, Long.MAX_VALUE, TrafficLog.Outcome.ERROR);
+        recorder.close();
+        assertEquals(4, recorder.getRecorded());
+
+        List<TrafficLog.Entry> entries = read();
+        assertEquals(4, entries.size());
+        TrafficLog.Entry first = entries.get(0);
+        assertEquals(Collections.singletonList("tp"), first.getPath());
+        assertEquals("alice bob", first.getArguments());
+        assertEquals(TrafficLog.SourceType.CONSOLE, first.getSource());
+        assertEquals(TrafficLog.Outcome.SUCCESS, first.getOutcome());
+        assertEquals(1500, first.getLatency());
+        assertEquals("/tp alice bob", first.toString());
+
+        TrafficLog.Entry second = entries.get(1);
+        assertEquals(Arrays.asList("region", "claim"), second.getPath());
+        assertEquals("home", second.getArguments());
+        assertEquals("claim home", second.getRootArguments());
+        assertEquals(TrafficLog.SourceType.OTHER, second.getSource());
+        assertEquals(1000, second.getTimestamp() - first.getTimestamp());
+
+        TrafficLog.Entry third = entries.get(2);
+        assertEquals(-5000, third.getTimestamp() - first.getTimestamp());
+        assertEquals("", third.getArguments());
+        assertEquals("/tp", third.toString());
+
+        TrafficLog.Entry fourth = entries.get(3);
+        assertEquals("h\u00e9llo \u2713", fourth.getArguments());
+        assertEquals(Long.MAX_VALUE, fourth.getLatency());
+        assertEquals(first.getTimestamp(), fourth.getTimestamp());
+    }
+
+    @Test
+    public void appendsSessions() throws IOException {
+        for (int session = 0; session < 3; session++) {
+            TrafficRecorder recorder = new Recorder(file, 4);
+            recorder.record("r" + session, source(CommandSource.class), ":sub " + session, System.nanoTime(), 1, TrafficLog.Outcome.SUCCESS);
+            recorder.close();
+        }
+        List<TrafficLog.Entry> entries = read();
+        assertEquals(3, entries.size());
+        for (int session = 0; session < 3; session++) {
+            // Path numbers start over in every session.
+            assertEquals(Arrays.asList("r" + session, "sub"), entries.get(session).getPath());
+            assertEquals(Integer.toString(session), entries.get(session).getArguments());
+        }
+    }
+
+    @Test
+    public void wrapsAroundTheRing() throws IOException {
+        TrafficRecorder recorder = new Recorder(file, 4);
+        int count = 0;
+        for (int i = 0; i < 1000; i++) {
+            // Lets the writer keep up, so every slot is reused many times.
+            while (recorder.getRecorded() + recorder.getDropped() < i) {
+                Thread.yield();
+            }
+            recorder.record("c", source(CommandSource.class), Integer.toString(i), System.nanoTime(), i, TrafficLog.Outcome.SUCCESS);
+        }
+        recorder.close();
+        assertEquals(0, recorder.getDropped());
+        for (TrafficLog.Entry entry : read()) {
+            assertEquals(Integer.toString(count), entry.getArguments());
+            assertEquals(count, entry.getLatency());
+            count++;
+        }
+        assertEquals(1000, count);
+    }
+
+    @Test
+    public void dropsWhenTheRingIsFull() throws IOException, InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        TrafficRecorder recorder = new Recorder(file, 4) {
+            @Override
+            int resolve(Object root, String arguments, List<String> path) {
+                blocked.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.resolve(root, arguments, path);
+            }
+        };
+        recorder.record("c", source(CommandSource.class), "0", System.nanoTime(), 0, TrafficLog.Outcome.SUCCESS);
+        blocked.await();
+        // The writer holds the first slot until it is done with it, so three more fit.
+        for (int i = 1; i < 10; i++) {
+            recorder.record("c", source(CommandSource.class), Integer.toString(i), System.nanoTime(), 0, TrafficLog.Outcome.SUCCESS);
+        }
+        assertEquals(6, recorder.getDropped());
+        resume.countDown();
+        recorder.close();
+        assertEquals(4, recorder.getRecorded());
+        List<String> arguments = new ArrayList<String>();
+        for (TrafficLog.Entry entry : read()) {
+            arguments.add(entry.getArguments());
+        }
+        assertEquals(Arrays.asList("0", "1", "2", "3"), arguments);
+        // Closed, so nothing more is recorded.
+        recorder.record("c", source(CommandSource.class), "10", System.nanoTime(), 0, TrafficLog.Outcome.SUCCESS);
+        assertEquals(4, recorder.getRecorded());
+    }
+
+    @Test
+    public void endsAtATruncatedRecord() throws IOException {
+        TrafficRecorder recorder = new Recorder(file, 4);
+        recorder.record("c", source(CommandSource.class), "complete", System.nanoTime(), 0, TrafficLog.Outcome.SUCCESS);
+        recorder.record("c", source(CommandSource.class), "cut off", System.nanoTime(), 0, TrafficLog.Outcome.SUCCESS);
+        recorder.close();
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        List<TrafficLog.Entry> entries = read();
+        assertEquals(1, entries.size());
+        assertEquals("complete", entries.get(0).getArguments());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        Files.write(file, new byte[]{TrafficLog.TAG_SESSION, 1, 2, 3, 4, 5, 6, 7, 8});
+        read();
+    }
+
+}